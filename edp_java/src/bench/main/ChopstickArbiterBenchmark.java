@@ -0,0 +1,64 @@
+package main;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Seats one diner thread per seat and lets them think and eat for a fixed time under each
+ * chopstick strategy, then reports eats per second, acquisition latency and how evenly the
+ * meals were shared.
+ *
+ * Usage: java -cp bin main.ChopstickArbiterBenchmark [seats] [durationMillis]
+ */
+public class ChopstickArbiterBenchmark {
+
+    // Scaled-down meal and thinking times, so contention matters but a run takes seconds
+    private static final long EATING_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long THINKING_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    public static void main(String[] args) throws InterruptedException {
+        int seats = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        long duration = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        Configuration.install(Configuration.fromArgs(new String[] { "--seats=" + seats, "--log-level=off" }));
+
+        System.out.println(String.format("%d seats, one diner each, %d ms per strategy", seats, duration));
+        for (ChopstickArbiter.Strategy strategy : ChopstickArbiter.Strategy.values()) {
+            if (strategy == ChopstickArbiter.Strategy.LEFT_FIRST) {
+                continue; // Deadlocks sooner or later, and the harness would wait forever
+            }
+            ChopstickArbiter chopsticks = ChopstickArbiter.create(strategy, seats);
+            run(chopsticks, seats, duration);
+            System.out.println(String.format("%s, hungriest seat ate %d times", chopsticks, chopsticks.leastMeals()));
+        }
+    }
+
+    private static void run(ChopstickArbiter chopsticks, int seats, long duration) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] diners = new Thread[seats];
+        long[] deadline = new long[1];
+        for (int i = 0; i < seats; i++) {
+            int seat = i;
+            diners[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (System.nanoTime() < deadline[0]) {
+                    chopsticks.pickUp(seat);
+                    LockSupport.parkNanos(EATING_NANOS);
+                    chopsticks.putDown(seat);
+                    LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(THINKING_NANOS) + 1);
+                }
+            });
+            diners[i].start();
+        }
+        deadline[0] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(duration);
+        start.countDown();
+        for (Thread diner : diners) {
+            diner.join();
+        }
+    }
+}
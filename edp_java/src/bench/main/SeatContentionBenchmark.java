@@ -0,0 +1,113 @@
+package main;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares the lock-free seat allocator with the previous synchronized scan under 8, 64 and
+ * 1024 threads, each repeatedly claiming and vacating a seat.
+ *
+ * Usage: java -cp bin main.SeatContentionBenchmark [seats] [durationMillis]
+ */
+public class SeatContentionBenchmark {
+
+    private static final int[] THREAD_COUNTS = { 8, 64, 1024 };
+
+    public static void main(String[] args) throws InterruptedException {
+        int seats = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        long duration = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        Configuration.install(Configuration.fromArgs(new String[] { "--seats=" + seats }));
+        LegacySeats legacy = new LegacySeats(seats);
+
+        System.out.println(String.format("%d seats, %d ms per run", seats, duration));
+        for (int threads : THREAD_COUNTS) {
+            report("synchronized", threads, duration, () -> {
+                LegacySeats.Seat seat = legacy.availableSeat();
+                if (seat != null && seat.attemptToOccupy()) {
+                    seat.vacate();
+                    return true;
+                }
+                return false;
+            });
+            report("lock-free", threads, duration, () -> {
+                Seat seat = Seat.claimAvailableSeat();
+                if (seat != null) {
+                    seat.vacate();
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    private interface Attempt {
+        boolean claimAndVacate();
+    }
+
+    private static void report(String label, int threads, long duration, Attempt attempt)
+            throws InterruptedException {
+        LongAdder claims = new LongAdder();
+        LongAdder misses = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        long[] deadline = new long[1];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (System.nanoTime() < deadline[0]) {
+                    if (attempt.claimAndVacate()) {
+                        claims.increment();
+                    } else {
+                        misses.increment();
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        deadline[0] = System.nanoTime() + duration * 1_000_000;
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long total = claims.sum() + misses.sum();
+        System.out.println(String.format("%-12s %5d threads: %,12.0f claims/s, %5.1f%% attempts failed", label,
+                threads, claims.sum() * 1000.0 / duration, total == 0 ? 0 : 100.0 * misses.sum() / total));
+    }
+
+    // The allocator as it was: a class-wide synchronized scan followed by a per-seat monitor
+    private static class LegacySeats {
+        private final Seat[] seats;
+
+        LegacySeats(int count) {
+            seats = new Seat[count];
+            java.util.Arrays.setAll(seats, i -> new Seat());
+        }
+
+        synchronized Seat availableSeat() {
+            for (Seat seat : seats)
+                if (!seat.occupied)
+                    return seat;
+            return null;
+        }
+
+        static class Seat {
+            private boolean occupied = false;
+
+            synchronized boolean attemptToOccupy() {
+                if (!occupied) {
+                    occupied = true;
+                    return true;
+                }
+                return false;
+            }
+
+            synchronized void vacate() {
+                occupied = false;
+            }
+        }
+    }
+}
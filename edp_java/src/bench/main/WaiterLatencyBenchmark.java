@@ -0,0 +1,97 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures order-to-plate latency for both waiter dispatch modes. The kitchen is
+ * replaced by a stub that cooks in a fixed time, so the difference between the
+ * modes is the time waiters spend noticing work.
+ *
+ * Usage: java -cp bin main.WaiterLatencyBenchmark [orders] [arrivalMillis] [kitchenMillis]
+ */
+public class WaiterLatencyBenchmark {
+
+    private static final int WAITERS = 2;
+
+    public static void main(String[] args) throws InterruptedException {
+        int orders = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        long arrivalInterval = args.length > 1 ? Long.parseLong(args[1]) : 250;
+        long kitchenTime = args.length > 2 ? Long.parseLong(args[2]) : 100;
+
+        // Cook and Waiter reference each other's statics; initialise them on one thread first
+        Waiter.list();
+        Thread kitchen = new Thread(() -> runKitchen(kitchenTime), "Bench Kitchen");
+        kitchen.setDaemon(true);
+        kitchen.start();
+
+        List<String> results = new ArrayList<>();
+        for (Waiter.DispatchMode mode : Waiter.DispatchMode.values()) {
+            results.add(run(mode, orders, arrivalInterval, kitchenTime));
+        }
+        kitchen.interrupt();
+
+        System.out.println();
+        for (String result : results) {
+            System.out.println(result);
+        }
+    }
+
+    private static String run(Waiter.DispatchMode mode, int orders, long arrivalInterval, long kitchenTime)
+            throws InterruptedException {
+        Thread[] waiters = new Thread[WAITERS];
+        for (int i = 0; i < waiters.length; i++) {
+            waiters[i] = new Thread(new Waiter("Bench Waiter " + i, mode));
+            waiters[i].setDaemon(true);
+            waiters[i].start();
+        }
+
+        Philosopher[] diners = new Philosopher[orders];
+        for (int i = 0; i < diners.length; i++) {
+            diners[i] = new Philosopher("Bench Diner " + i);
+            diners[i].callWaiter();
+            Thread.sleep(arrivalInterval);
+        }
+        // Allow the last orders to drain through two polling intervals plus the kitchen
+        Thread.sleep(2 * 500 + kitchenTime + 500);
+
+        for (Thread waiter : waiters) {
+            waiter.interrupt();
+            waiter.join();
+        }
+
+        long[] latencies = Arrays.stream(diners)
+                .filter(p -> p.order().isPresent() && p.order().get().isServed())
+                .mapToLong(p -> p.order().get().orderToPlateNanos())
+                .sorted()
+                .toArray();
+        if (latencies.length == 0) {
+            return String.format("%-12s no orders served", mode);
+        }
+        return String.format("%-12s served %d/%d, order-to-plate ms: mean %.1f, p50 %.1f, p99 %.1f, max %.1f",
+                mode, latencies.length, orders,
+                Arrays.stream(latencies).average().orElse(0) / 1e6,
+                percentile(latencies, 0.50) / 1e6,
+                percentile(latencies, 0.99) / 1e6,
+                latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static void runKitchen(long kitchenTime) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Order order = Cook.ORDER_QUEUE.take();
+                Thread.sleep(kitchenTime);
+                Counter.placeCompletedMeal(order);
+                Cook.ADMISSION.completed(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
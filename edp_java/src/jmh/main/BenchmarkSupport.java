@@ -0,0 +1,27 @@
+package main;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Shared set-up for the JMH benchmarks. Each benchmark fork is a fresh JVM, so it can size the
+ * restaurant before any actor class is loaded.
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+        // Prevent instantiation
+    }
+
+    static void setUpRestaurant(int seats, String... settings) {
+        // Later arguments win, so the settings can override the defaults
+        String[] args = new String[settings.length + 3];
+        args[0] = "--seats=" + seats;
+        args[1] = "--log-level=off";
+        args[2] = "--stall-detector=off";
+        System.arraycopy(settings, 0, args, 3, settings.length);
+        Configuration.install(Configuration.fromArgs(args));
+        // Measure the code path, not the event log, the stall detector or the terminal
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+}
@@ -0,0 +1,48 @@
+package main;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChopstickBenchmark {
+
+    @Param({ "5", "64", "1024" })
+    public int seats;
+
+    @Param({ "ORDERED", "TRY_LOCK", "HYGIENIC", "LOCK_FREE" })
+    public ChopstickArbiter.Strategy strategy;
+
+    private ChopstickArbiter chopsticks;
+
+    @Setup
+    public void setUp() {
+        BenchmarkSupport.setUpRestaurant(seats);
+        chopsticks = ChopstickArbiter.create(strategy, seats);
+    }
+
+    // Picks up and puts down both chopsticks of a random seat, as Philosopher.eat does without the meal
+    @Benchmark
+    public int pickUpAndPutDown() {
+        int seat = ThreadLocalRandom.current().nextInt(seats);
+        chopsticks.pickUp(seat);
+        chopsticks.putDown(seat);
+        return seat;
+    }
+}
@@ -0,0 +1,67 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CounterBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Restaurant {
+        @Param({ "5", "1024" })
+        public int seats;
+
+        // One counter lane per waiter at the single table
+        @Param({ "2", "64" })
+        public int waiters;
+
+        final java.util.concurrent.atomic.AtomicInteger nextLane = new java.util.concurrent.atomic.AtomicInteger();
+
+        @Setup
+        public void setUp() {
+            BenchmarkSupport.setUpRestaurant(seats, "--waiters=" + waiters);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Meal {
+        Order order;
+        int lane;
+
+        @Setup
+        public void setUp(Restaurant restaurant) {
+            lane = restaurant.nextLane.getAndIncrement() % restaurant.waiters;
+            order = new Order(new Philosopher("Benchmark"));
+            order.assignLane(lane);
+        }
+    }
+
+    // A cook places a meal in the lane of the waiter who picks it up
+    @Benchmark
+    public Order placeThenPoll(Meal meal) {
+        Counter.placeCompletedMeal(meal.order);
+        return Counter.pollCompletedMeal(meal.order.philosopher().table(), meal.lane);
+    }
+
+    // Every waiter starts at the same lane and steals, as the single shared queue behaved
+    @Benchmark
+    public Order placeThenPollShared(Meal meal) {
+        Counter.placeCompletedMeal(meal.order);
+        return Counter.pollCompletedMeal();
+    }
+}
@@ -0,0 +1,63 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Journalling overhead on a busy actor: each operation is about 10 microseconds of other work
+ * followed by one journalled event, so one thread produces roughly 100k events a second. The
+ * difference between the two settings is the share of time the journal costs, writer included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean journal;
+
+    // Roughly 10 microseconds of work between events
+    static final long WORK = 64;
+
+    private int philosopher = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (journal) {
+            BenchmarkSupport.setUpRestaurant(5,
+                    "--journal=" + Files.createTempDirectory("journal-benchmark").toString());
+        } else {
+            BenchmarkSupport.setUpRestaurant(5);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        Journal.close();
+    }
+
+    @Benchmark
+    public int workThenRecord() {
+        Blackhole.consumeCPU(WORK);
+        Journal.record(Journal.Type.PAID, philosopher++ & 1023, -1, 7, 1250, 18750);
+        return philosopher;
+    }
+}
@@ -0,0 +1,92 @@
+package main;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Ledger transactions per microsecond, each thread on its own wallet or all on one. After every
+ * iteration the books must balance exactly: the money left in the wallets has to equal deposits
+ * plus coupons minus revenue, or an update was lost.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LedgerBenchmark {
+
+    static final long PRICE = 1234;
+
+    @State(Scope.Benchmark)
+    public static class Books {
+        final Queue<Ledger.Account> wallets = new ConcurrentLinkedQueue<>();
+        Ledger.Account shared;
+
+        @Setup
+        public void setUp() {
+            shared = open(1_000_000);
+        }
+
+        Ledger.Account open(long cents) {
+            Ledger.Account wallet = Ledger.open(cents);
+            wallets.add(wallet);
+            return wallet;
+        }
+
+        @TearDown(Level.Iteration)
+        public void audit() {
+            Ledger.Snapshot snapshot = Ledger.snapshot();
+            long held = 0;
+            for (Ledger.Account wallet : wallets) {
+                held += wallet.balance();
+            }
+            if (held != snapshot.outstandingCents()) {
+                throw new IllegalStateException(String.format("Ledger lost updates: wallets hold %d cents but the "
+                        + "books say %d (%s)", held, snapshot.outstandingCents(), snapshot));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Diner {
+        Ledger.Account wallet;
+
+        @Setup
+        public void setUp(Books books) {
+            wallet = books.open(1_000_000);
+        }
+    }
+
+    // A meal paid for and a coupon of the same value, so the wallet never runs dry
+    @Benchmark
+    public long payThenCoupon(Diner diner) {
+        Ledger.pay(diner.wallet, PRICE);
+        return Ledger.issueCoupon(diner.wallet, PRICE);
+    }
+
+    // Every thread on one wallet: the compare-and-set on the balance is contended, the totals are not
+    @Benchmark
+    public long payThenCouponShared(Books books) {
+        Ledger.pay(books.shared, PRICE);
+        return Ledger.issueCoupon(books.shared, PRICE);
+    }
+
+    @Benchmark
+    public Ledger.Snapshot snapshot() {
+        return Ledger.snapshot();
+    }
+}
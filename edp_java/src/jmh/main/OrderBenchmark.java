@@ -0,0 +1,58 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBenchmark {
+
+    private Philosopher philosopher;
+    private Order order;
+
+    @Setup
+    public void setUp() {
+        // Logging on, so logOrder measures what an actor pays to log
+        BenchmarkSupport.setUpRestaurant(5, "--log-level=info");
+        philosopher = new Philosopher("Benchmark");
+        order = new Order(philosopher);
+    }
+
+    @Benchmark
+    public Order newOrder() {
+        return new Order(philosopher);
+    }
+
+    // What the waiters do: take an order from the pool and hand it back once paid for
+    @Benchmark
+    public Order pooledOrder() {
+        Order pooled = Order.obtain(philosopher);
+        pooled.recycle();
+        return pooled;
+    }
+
+    @Benchmark
+    public String mealString() {
+        return order.mealString();
+    }
+
+    @Benchmark
+    public Order logOrder() {
+        EventLog.log(EventLog.Type.WAITER_PLACED_ORDER, philosopher.name(), order);
+        return order;
+    }
+}
@@ -0,0 +1,32 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks once per thread count, so contention can be compared across counts.
+ *
+ * Usage: java -jar target/benchmarks.jar [--threads=1,8,64] [JMH options, e.g. SeatBenchmark -p seats=1024]
+ */
+public class RestaurantBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        String threadCounts = "1,8,64";
+        List<String> jmhArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                threadCounts = arg.substring("--threads=".length());
+            } else {
+                jmhArgs.add(arg);
+            }
+        }
+        CommandLineOptions options = new CommandLineOptions(jmhArgs.toArray(new String[0]));
+        for (String threads : threadCounts.split(",")) {
+            new Runner(new OptionsBuilder().parent(options).threads(Integer.parseInt(threads.trim())).build()).run();
+        }
+    }
+}
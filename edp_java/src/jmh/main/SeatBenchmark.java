@@ -0,0 +1,57 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SeatBenchmark {
+
+    @Param({ "16", "1024", "65536" })
+    public int seats;
+
+    // Seats split across tables, each with its own occupancy bitset
+    @Param({ "1", "8" })
+    public int tables;
+
+    @Setup
+    public void setUp() {
+        BenchmarkSupport.setUpRestaurant(seats, "--tables=" + tables, "--waiters=" + Math.max(2, tables));
+    }
+
+    // The two-step path: find a free seat, then race to occupy it
+    @Benchmark
+    public boolean availableSeatThenOccupy() {
+        Seat seat = Seat.availableSeat();
+        if (seat != null && seat.attemptToOccupy()) {
+            seat.vacate();
+            return true;
+        }
+        return false;
+    }
+
+    @Benchmark
+    public boolean claimAvailableSeat() {
+        Seat seat = Seat.claimAvailableSeat();
+        if (seat != null) {
+            seat.vacate();
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,57 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaiterBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Restaurant {
+        @Param({ "5", "1024" })
+        public int seats;
+
+        @Setup
+        public void setUp() {
+            BenchmarkSupport.setUpRestaurant(seats);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Diner {
+        Philosopher philosopher;
+        Order order;
+
+        @Setup
+        public void setUp(Restaurant restaurant) {
+            philosopher = new Philosopher("Benchmark");
+            order = new Order(philosopher);
+        }
+    }
+
+    // A philosopher calls, a waiter answers the next call in the queue and takes the order
+    @Benchmark
+    public Philosopher callAndAnswer(Diner diner) {
+        diner.philosopher.callWaiter();
+        Philosopher answered = diner.philosopher.table().answerNextCall();
+        if (answered != null) {
+            answered.setOrder(diner.order);
+        }
+        return answered;
+    }
+}
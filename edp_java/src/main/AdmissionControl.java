@@ -0,0 +1,155 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether the kitchen takes another order. Orders up to the stove capacity are always
+ * admitted; beyond that an order may wait in the queue as long as Little's law says a cook will
+ * start it within the philosopher's patience: the k-th waiting order starts after about k / rate,
+ * where rate is the kitchen throughput measured from each cook's cycle at the stove. Only orders
+ * predicted to wait longer are turned away with a coupon. A cook going on a coffee break takes
+ * their share of the stove capacity with them until they are back, so waiters stop placing orders
+ * that nobody can start straight away the moment it happens; the queue allowance stays, as a break
+ * ends within about one philosopher's patience.
+ *
+ * Times are in milliseconds on whatever clock the caller uses, so the threaded restaurant and the
+ * simulation share the controller.
+ */
+public final class AdmissionControl {
+
+    public enum Policy {
+        // Coupon as soon as the stove capacity is taken, as the restaurant used to
+        FIXED,
+        // Queue orders while the predicted wait fits in the philosopher's patience
+        ADAPTIVE
+    }
+
+    // Weight of the newest cook cycle in the moving average of cook throughput
+    static final double SMOOTHING = 0.2;
+
+    private final Policy policy;
+    private final int stoveCapacity;
+    private final int capacity;
+    private final long patience;
+    private final int cooks;
+    // Cooks at the stove rather than on a break
+    private final AtomicInteger available;
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final LongAdder deadlineMisses = new LongAdder();
+    // Meals per millisecond of one cook, moving average over recent cycles
+    private volatile double cookRate;
+
+    /**
+     * @param stoveCapacity orders admitted without question, as many as the cooks take at once
+     * @param capacity most orders the kitchen can hold, cooking and queued
+     * @param cookRate meals per millisecond to assume for each cook until they report in
+     */
+    public AdmissionControl(Policy policy, int stoveCapacity, int capacity, long patience, int cooks,
+            double cookRate) {
+        this.policy = policy;
+        this.stoveCapacity = stoveCapacity;
+        this.capacity = Math.max(stoveCapacity, capacity);
+        this.patience = patience;
+        this.cooks = cooks;
+        this.available = new AtomicInteger(cooks);
+        this.cookRate = cookRate;
+    }
+
+    // Meals per millisecond the whole kitchen gets through while busy
+    public double rate() {
+        return cooks * cookRate;
+    }
+
+    // Orders always accepted with the cooks now at the stove
+    private int stove(int cooksAvailable) {
+        return (int) ((long) stoveCapacity * cooksAvailable / cooks);
+    }
+
+    public void cookLeft() {
+        available.decrementAndGet();
+    }
+
+    public void cookReturned() {
+        available.incrementAndGet();
+    }
+
+    public int availableCooks() {
+        return available.get();
+    }
+
+    /**
+     * Admits an order if there is room, counting it against the kitchen until
+     * {@link #completed(int)} reports it cooked.
+     */
+    public boolean tryAdmit() {
+        int limit = limit();
+        int current = admitted.get();
+        while (current < limit) {
+            if (admitted.compareAndSet(current, current + 1)) {
+                return true;
+            }
+            current = admitted.get();
+        }
+        return false;
+    }
+
+    // Most orders the kitchen holds at once, on the stove and waiting
+    public int limit() {
+        int cooksAvailable = available.get();
+        if (policy == Policy.FIXED) {
+            return stove(cooksAvailable);
+        }
+        long waiting = (long) Math.floor(rate() * patience);
+        return (int) Math.min(stove(cooksAvailable) + waiting, capacity);
+    }
+
+    // Expected time before a cook starts the next admitted order
+    public double predictedWait() {
+        int waiting = admitted.get() - stove(available.get()) + 1;
+        return waiting <= 0 ? 0 : waiting / rate();
+    }
+
+    /**
+     * Called as a cook starts an order admitted on the promise of starting by the deadline.
+     * Returns whether the deadline was missed.
+     */
+    public boolean started(long deadline, long now) {
+        if (now > deadline) {
+            deadlineMisses.increment();
+            return true;
+        }
+        return false;
+    }
+
+    // Meals cooked and on their way out of the kitchen
+    public void completed(int meals) {
+        admitted.addAndGet(-meals);
+    }
+
+    /**
+     * Reports how long a cook took to get through some meals, from picking up the orders to being
+     * ready for the next ones. Coffee breaks are left out, as the cook is not counted while on one.
+     */
+    public synchronized void recordCycle(int meals, long cycleTime) {
+        if (cycleTime > 0) {
+            cookRate += SMOOTHING * ((double) meals / cycleTime - cookRate);
+        }
+    }
+
+    public double ratePerMinute() {
+        return rate() * 60_000;
+    }
+
+    public int admitted() {
+        return admitted.get();
+    }
+
+    public long deadlineMisses() {
+        return deadlineMisses.sum();
+    }
+
+    public long patience() {
+        return patience;
+    }
+}
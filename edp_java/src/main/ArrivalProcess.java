@@ -0,0 +1,228 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * When philosophers walk into an open restaurant. Arrivals follow a schedule of their own rather
+ * than waiting for earlier philosophers to leave, so a slow restaurant sees the same offered load
+ * as a fast one and queues build up the way they would with real customers.
+ *
+ * Times are milliseconds since opening on whatever clock the caller uses, so the threaded
+ * restaurant and the simulation draw arrivals from the same processes. A process hands out
+ * arrivals in time order, one at a time, and is not thread safe.
+ */
+public abstract class ArrivalProcess {
+
+    public enum Kind {
+        // The fixed population of Configuration.philosophers(), dining until their money runs out
+        CLOSED,
+        // Independent arrivals at a constant mean rate
+        POISSON,
+        // Short rushes at several times the mean rate between long quiet spells
+        BURSTY,
+        // A day's cycle, quiet at midnight and busiest at noon
+        DIURNAL,
+        // Replayed from a file of "offsetMillis[,budget[,thinkMillis]]" lines
+        TRACE
+    }
+
+    // Bursty arrivals repeat a rush of BURST_SHARE of each period at BURST_FACTOR times the mean
+    // rate; the rest of the period runs slow enough to keep the mean
+    static final long BURST_PERIOD = 2 * 60 * 1000;
+    static final double BURST_SHARE = 0.25;
+    static final double BURST_FACTOR = 3.0;
+    static final long DAY = 24L * 60 * 60 * 1000;
+    // How far the diurnal rate swings either side of the mean
+    static final double DIURNAL_AMPLITUDE = 0.8;
+
+    /**
+     * The configured arrival process, or null for a closed population.
+     */
+    public static ArrivalProcess create(Configuration configuration) {
+        double rate = configuration.arrivalRate() / 60_000.0;
+        float budget = configuration.budget();
+        long thinkTime = configuration.thinkTime();
+        switch (configuration.arrivals()) {
+            case POISSON:
+                return new Modulated(Kind.POISSON, budget, thinkTime, rate, 1, t -> 1, t -> t);
+            case BURSTY: {
+                double quiet = (1 - BURST_SHARE * BURST_FACTOR) / (1 - BURST_SHARE);
+                double burst = BURST_PERIOD * BURST_SHARE;
+                return new Modulated(Kind.BURSTY, budget, thinkTime, rate, BURST_FACTOR,
+                        t -> t % BURST_PERIOD < burst ? BURST_FACTOR : quiet,
+                        t -> {
+                            double periods = Math.floor(t / BURST_PERIOD);
+                            double into = t - periods * BURST_PERIOD;
+                            return periods * BURST_PERIOD + Math.min(into, burst) * BURST_FACTOR
+                                    + Math.max(0, into - burst) * quiet;
+                        });
+            }
+            case DIURNAL: {
+                double angle = 2 * Math.PI / DAY;
+                return new Modulated(Kind.DIURNAL, budget, thinkTime, rate, 1 + DIURNAL_AMPLITUDE,
+                        t -> 1 - DIURNAL_AMPLITUDE * Math.cos(angle * t),
+                        t -> t - DIURNAL_AMPLITUDE * Math.sin(angle * t) / angle);
+            }
+            case TRACE:
+                return new Trace(budget, thinkTime, configuration.arrivalTrace());
+            default:
+                return null;
+        }
+    }
+
+    private final Kind kind;
+    private float budget;
+    private long thinkTime;
+    protected long arrivals = 0;
+
+    protected ArrivalProcess(Kind kind, float budget, long thinkTime) {
+        this.kind = kind;
+        this.budget = budget;
+        this.thinkTime = thinkTime;
+    }
+
+    /**
+     * Time of the next arrival, never earlier than the one before, or -1 once the process has no
+     * more. {@link #budget()} and {@link #thinkTime()} then describe that philosopher.
+     */
+    public abstract long next(Random random);
+
+    /**
+     * Arrivals the process is expected to offer from opening until the given time.
+     */
+    public abstract double offered(long time);
+
+    public Kind kind() {
+        return kind;
+    }
+
+    // Money the latest arrival brings
+    public float budget() {
+        return budget;
+    }
+
+    // How long the latest arrival thinks between meals
+    public long thinkTime() {
+        return thinkTime;
+    }
+
+    // Arrivals handed out so far
+    public long arrivals() {
+        return arrivals;
+    }
+
+    protected void describe(float budget, long thinkTime) {
+        this.budget = budget;
+        this.thinkTime = thinkTime;
+    }
+
+    /**
+     * A Poisson process whose rate varies over time, generated by thinning: candidates come at the
+     * peak rate and each is kept with probability rate(t) / peak.
+     */
+    private static final class Modulated extends ArrivalProcess {
+        private final double meanRate;
+        private final double peak;
+        // Rate at time t, relative to the mean
+        private final DoubleUnaryOperator shape;
+        // Integral of the shape from opening to t
+        private final DoubleUnaryOperator load;
+        private double time = 0;
+
+        Modulated(Kind kind, float budget, long thinkTime, double meanRate, double peak,
+                DoubleUnaryOperator shape, DoubleUnaryOperator load) {
+            super(kind, budget, thinkTime);
+            if (meanRate <= 0) {
+                throw new IllegalArgumentException("Arrival rate must be positive.");
+            }
+            this.meanRate = meanRate;
+            this.peak = peak;
+            this.shape = shape;
+            this.load = load;
+        }
+
+        @Override
+        public long next(Random random) {
+            do {
+                time -= Math.log(1 - random.nextDouble()) / (meanRate * peak);
+            } while (random.nextDouble() * peak >= shape.applyAsDouble(time));
+            arrivals++;
+            return (long) time;
+        }
+
+        @Override
+        public double offered(long time) {
+            return meanRate * load.applyAsDouble(time);
+        }
+    }
+
+    private static final class Trace extends ArrivalProcess {
+        private final String file;
+        private final BufferedReader reader;
+        private final float defaultBudget;
+        private final long defaultThinkTime;
+        private long previous = 0;
+        private int line = 0;
+
+        Trace(float budget, long thinkTime, String file) {
+            super(Kind.TRACE, budget, thinkTime);
+            if (file == null) {
+                throw new IllegalArgumentException("Trace arrivals need an --arrival-trace file.");
+            }
+            this.file = file;
+            this.defaultBudget = budget;
+            this.defaultThinkTime = thinkTime;
+            try {
+                this.reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not read arrival trace: " + file, e);
+            }
+        }
+
+        // Read a line at a time, so a trace of millions of arrivals never sits in memory
+        @Override
+        public long next(Random random) {
+            String text;
+            try {
+                do {
+                    text = reader.readLine();
+                    line++;
+                    if (text == null) {
+                        reader.close();
+                        return -1;
+                    }
+                    text = text.trim();
+                } while (text.isEmpty() || text.startsWith("#"));
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not read arrival trace: " + file, e);
+            }
+            String[] fields = text.split(",");
+            try {
+                long time = Long.parseLong(fields[0].trim());
+                if (time < previous) {
+                    throw new IllegalArgumentException(
+                            String.format("%s:%d: arrivals must be in time order", file, line));
+                }
+                previous = time;
+                describe(fields.length > 1 ? Float.parseFloat(fields[1].trim()) : defaultBudget,
+                        fields.length > 2 ? Long.parseLong(fields[2].trim()) : defaultThinkTime);
+                arrivals++;
+                return time;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format("%s:%d: bad arrival: %s", file, line, text), e);
+            }
+        }
+
+        // Whatever the trace holds is the offered load; callers stop at the first arrival past their end
+        @Override
+        public double offered(long time) {
+            return time >= previous ? arrivals : arrivals - 1;
+        }
+    }
+}
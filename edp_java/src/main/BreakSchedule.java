@@ -0,0 +1,76 @@
+package main;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands out coffee breaks to a group of cooks so they do not all leave the stove at once. At most
+ * a few cooks may be on break together, as many as would be on average if breaks fell evenly, and
+ * breaks start at least a break's length apart divided among them. A cook whose break is refused
+ * keeps cooking and asks again after the next meal, so no break is lost, only moved.
+ *
+ * Times are in milliseconds on whatever clock the caller uses, so the threaded kitchen and the
+ * simulation share the schedule.
+ */
+public final class BreakSchedule {
+
+    private final int cooks;
+    private final int maxOnBreak;
+    private final long spacing;
+    private int onBreak = 0;
+    private long lastStart = Long.MIN_VALUE;
+    private final LongAdder breaks = new LongAdder();
+    private final LongAdder deferrals = new LongAdder();
+
+    /**
+     * @param mealsBetweenBreaks meals a cook works between breaks
+     * @param mealTime milliseconds an average meal takes
+     * @param breakTime milliseconds a break takes
+     */
+    public BreakSchedule(int cooks, int mealsBetweenBreaks, long mealTime, long breakTime) {
+        this.cooks = cooks;
+        // The share of its time a cook spends on break, times the cooks, rounded up
+        double share = (double) breakTime / (mealsBetweenBreaks * mealTime + breakTime);
+        this.maxOnBreak = Math.max(1, (int) Math.ceil(cooks * share));
+        this.spacing = breakTime / maxOnBreak;
+    }
+
+    /**
+     * Starts a break for a cook who is due one, unless too many are out or one started too recently.
+     * A started break must be ended with {@link #end()}.
+     */
+    public synchronized boolean tryStart(long now) {
+        if (onBreak >= maxOnBreak || (lastStart != Long.MIN_VALUE && now - lastStart < spacing)) {
+            deferrals.increment();
+            return false;
+        }
+        onBreak++;
+        lastStart = now;
+        breaks.increment();
+        return true;
+    }
+
+    public synchronized void end() {
+        onBreak--;
+    }
+
+    public synchronized int onBreak() {
+        return onBreak;
+    }
+
+    public int cooks() {
+        return cooks;
+    }
+
+    public int maxOnBreak() {
+        return maxOnBreak;
+    }
+
+    public long breaks() {
+        return breaks.sum();
+    }
+
+    // Times a due cook was asked to keep cooking a little longer
+    public long deferrals() {
+        return deferrals.sum();
+    }
+}
@@ -0,0 +1,508 @@
+package main;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out the two chopsticks a seat needs to eat: chopstick {@code seat} on the left and
+ * chopstick {@code seat + 1} (wrapping round the table) on the right. Each strategy keeps its own
+ * acquisition latency histogram and per-seat meal counts, so strategies can be compared for
+ * throughput and starvation on the same table.
+ *
+ * Selected with --chopsticks=ordered|try-lock|hygienic|lock-free.
+ */
+public abstract class ChopstickArbiter {
+
+    public enum Strategy {
+        // Every seat locks its lower-numbered chopstick first, so no cycle of waits can form
+        ORDERED,
+        // Take the left chopstick, try the right, and put both down with a random backoff on failure
+        TRY_LOCK,
+        // Chandy-Misra: dirty chopsticks pass to a hungry neighbour, clean ones stay put
+        HYGIENIC,
+        // Both chopsticks claimed by compare-and-set on a bitset, in one step when they share a word
+        LOCK_FREE,
+        // Left chopstick, then right: the textbook table that can deadlock, for trying the stall detector
+        LEFT_FIRST
+    }
+
+    public static ChopstickArbiter create(Strategy strategy, int seats) {
+        return create(strategy, seats, 0);
+    }
+
+    /**
+     * @param firstSeat restaurant-wide number of seat 0, so the stall detector can tell tables apart
+     */
+    public static ChopstickArbiter create(Strategy strategy, int seats, int firstSeat) {
+        ChopstickArbiter arbiter;
+        switch (strategy) {
+            case ORDERED:
+            case LEFT_FIRST:
+                arbiter = new Ordered(strategy, seats);
+                break;
+            case TRY_LOCK:
+                arbiter = new TryLock(seats);
+                break;
+            case HYGIENIC:
+                arbiter = new Hygienic(seats);
+                break;
+            case LOCK_FREE:
+                arbiter = new LockFree(seats);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown chopstick strategy: " + strategy);
+        }
+        arbiter.firstSeat = firstSeat;
+        return arbiter;
+    }
+
+    // Bounds for the randomized exponential backoff between failed attempts
+    static final long MIN_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Strategy strategy;
+    protected final int seats;
+    private final LatencyHistogram acquisitions = new LatencyHistogram();
+    private final AtomicLongArray mealsBySeat;
+    private final AtomicLongArray requestsBySeat;
+    private final LongAdder retries = new LongAdder();
+    private final long created = System.nanoTime();
+    private int firstSeat = 0;
+    // Seat holding each chopstick, or -1, kept for the stall detector to follow wait-for edges
+    private final AtomicIntegerArray holders;
+
+    protected ChopstickArbiter(Strategy strategy, int seats) {
+        if (seats < 2) {
+            throw new IllegalArgumentException("The table needs at least two chopsticks.");
+        }
+        this.strategy = strategy;
+        this.seats = seats;
+        this.holders = new AtomicIntegerArray(seats);
+        for (int chopstick = 0; chopstick < seats; chopstick++) {
+            holders.set(chopstick, -1);
+        }
+        this.mealsBySeat = new AtomicLongArray(seats);
+        this.requestsBySeat = new AtomicLongArray(seats);
+    }
+
+    public Strategy strategy() {
+        return strategy;
+    }
+
+    /**
+     * Blocks until the seat holds both of its chopsticks.
+     */
+    public final void pickUp(int seat) {
+        requestsBySeat.incrementAndGet(seat);
+        long start = System.nanoTime();
+        acquire(seat);
+        RestaurantStatus.chopsticksTaken(2);
+        long waited = System.nanoTime() - start;
+        acquisitions.record(waited);
+        Metrics.histogram(Metrics.Latency.CHOPSTICK_ACQUISITION).record(waited);
+        mealsBySeat.incrementAndGet(seat);
+    }
+
+    public final void putDown(int seat) {
+        RestaurantStatus.chopsticksPutDown(2);
+        // Cleared while still held, so it never overwrites the next holder
+        released(left(seat));
+        released(right(seat));
+        release(seat);
+    }
+
+    protected abstract void acquire(int seat);
+
+    protected abstract void release(int seat);
+
+    public abstract boolean isHeld(int chopstick);
+
+    // Stall detector hooks. Holders are a lazy store each, so only a seat that has to block posts an event.
+    protected final void waiting(int seat, int chopstick) {
+        StallDetector.waiting(this, seat, chopstick);
+    }
+
+    protected final void waited(int seat) {
+        StallDetector.waited(this, seat);
+    }
+
+    protected final void holding(int seat, int chopstick) {
+        if (StallDetector.isEnabled()) {
+            holders.lazySet(chopstick, seat);
+        }
+    }
+
+    private void released(int chopstick) {
+        if (StallDetector.isEnabled()) {
+            holders.lazySet(chopstick, -1);
+        }
+    }
+
+    // Seat holding the chopstick, or -1, as last published; numbered within the table
+    int holder(int chopstick) {
+        return holders.get(chopstick);
+    }
+
+    // Restaurant-wide number of seat and chopstick 0
+    int firstSeat() {
+        return firstSeat;
+    }
+
+    protected int left(int seat) {
+        return seat;
+    }
+
+    protected int right(int seat) {
+        return (seat + 1) % seats;
+    }
+
+    public java.util.List<Integer> heldChopsticks() {
+        java.util.List<Integer> held = new java.util.ArrayList<>();
+        for (int chopstick = 0; chopstick < seats; chopstick++) {
+            if (isHeld(chopstick)) {
+                held.add(chopstick);
+            }
+        }
+        return held;
+    }
+
+    // Sleeps for a random time below the current backoff and returns the next, doubled, backoff
+    protected long backOff(long backoff) {
+        retries.increment();
+        Metrics.increment(Metrics.Count.CHOPSTICK_RETRIES);
+        LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(backoff) + 1);
+        return Math.min(backoff * 2, MAX_BACKOFF_NANOS);
+    }
+
+    public long meals() {
+        long meals = 0;
+        for (int seat = 0; seat < seats; seat++) {
+            meals += mealsBySeat.get(seat);
+        }
+        return meals;
+    }
+
+    public double eatsPerSecond() {
+        return meals() / ((System.nanoTime() - created) / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public long retries() {
+        return retries.sum();
+    }
+
+    public LatencyHistogram acquisitions() {
+        return acquisitions;
+    }
+
+    /**
+     * Jain's fairness index over the meals of every seat that asked for chopsticks: 1 when all ate
+     * equally often, approaching 1/n as one seat takes all the meals.
+     */
+    public double fairness() {
+        double sum = 0;
+        double sumOfSquares = 0;
+        int hungrySeats = 0;
+        for (int seat = 0; seat < seats; seat++) {
+            if (requestsBySeat.get(seat) > 0) {
+                long meals = mealsBySeat.get(seat);
+                sum += meals;
+                sumOfSquares += (double) meals * meals;
+                hungrySeats++;
+            }
+        }
+        return sumOfSquares == 0 ? 1 : sum * sum / (hungrySeats * sumOfSquares);
+    }
+
+    // Fewest meals eaten at any seat that asked for chopsticks; zero means a seat starved
+    public long leastMeals() {
+        long least = Long.MAX_VALUE;
+        for (int seat = 0; seat < seats; seat++) {
+            if (requestsBySeat.get(seat) > 0) {
+                least = Math.min(least, mealsBySeat.get(seat));
+            }
+        }
+        return least == Long.MAX_VALUE ? 0 : least;
+    }
+
+    // Seats still waiting for chopsticks they asked for, i.e. requests without a meal yet
+    public int waitingSeats() {
+        int waiting = 0;
+        for (int seat = 0; seat < seats; seat++) {
+            if (requestsBySeat.get(seat) > mealsBySeat.get(seat)) {
+                waiting++;
+            }
+        }
+        return waiting;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %.1f eats/s, wait p99 %.1f ms max %.1f ms, %d retries, fairness %.3f",
+                strategy.name().toLowerCase().replace('_', '-'), eatsPerSecond(),
+                acquisitions.percentile(0.99) / 1e6, acquisitions.max() / 1e6, retries(), fairness());
+    }
+
+    private static final class Ordered extends ChopstickArbiter {
+        private final ReentrantLock[] chopsticks;
+        // Left first regardless of number, which lets the last seat close a cycle
+        private final boolean leftFirst;
+
+        Ordered(Strategy strategy, int seats) {
+            super(strategy, seats);
+            chopsticks = new ReentrantLock[seats];
+            java.util.Arrays.setAll(chopsticks, i -> new ReentrantLock());
+            leftFirst = strategy == Strategy.LEFT_FIRST;
+        }
+
+        // Locks rather than monitors, so a virtual thread eating does not pin its carrier thread
+        @Override
+        protected void acquire(int seat) {
+            int first = leftFirst ? left(seat) : Math.min(left(seat), right(seat));
+            int second = leftFirst ? right(seat) : Math.max(left(seat), right(seat));
+            lock(seat, first);
+            lock(seat, second);
+        }
+
+        private void lock(int seat, int chopstick) {
+            ReentrantLock lock = chopsticks[chopstick];
+            if (!lock.tryLock()) {
+                waiting(seat, chopstick);
+                lock.lock();
+                waited(seat);
+            }
+            holding(seat, chopstick);
+        }
+
+        @Override
+        protected void release(int seat) {
+            chopsticks[right(seat)].unlock();
+            chopsticks[left(seat)].unlock();
+        }
+
+        @Override
+        public boolean isHeld(int chopstick) {
+            return chopsticks[chopstick].isLocked();
+        }
+    }
+
+    private static final class TryLock extends ChopstickArbiter {
+        private final ReentrantLock[] chopsticks;
+
+        TryLock(int seats) {
+            super(Strategy.TRY_LOCK, seats);
+            chopsticks = new ReentrantLock[seats];
+            java.util.Arrays.setAll(chopsticks, i -> new ReentrantLock());
+        }
+
+        @Override
+        protected void acquire(int seat) {
+            ReentrantLock left = chopsticks[left(seat)];
+            ReentrantLock right = chopsticks[right(seat)];
+            long backoff = MIN_BACKOFF_NANOS;
+            while (true) {
+                if (left.tryLock()) {
+                    if (right.tryLock()) {
+                        holding(seat, left(seat));
+                        holding(seat, right(seat));
+                        return;
+                    }
+                    left.unlock();
+                }
+                backoff = backOff(backoff);
+            }
+        }
+
+        @Override
+        protected void release(int seat) {
+            chopsticks[right(seat)].unlock();
+            chopsticks[left(seat)].unlock();
+        }
+
+        @Override
+        public boolean isHeld(int chopstick) {
+            return chopsticks[chopstick].isLocked();
+        }
+    }
+
+    private static final class Hygienic extends ChopstickArbiter {
+
+        // Belongs to one of its two seats at a time; a seat takes it from its neighbour only if dirty
+        private static final class Chopstick {
+            final ReentrantLock lock = new ReentrantLock();
+            final Condition changed = lock.newCondition();
+            int owner;
+            boolean dirty = true;
+            volatile boolean inUse = false;
+
+            // Whether the seat has to wait for this chopstick; caller holds the lock
+            boolean blocks(int seat) {
+                return owner == seat ? inUse : inUse || !dirty;
+            }
+        }
+
+        private final Chopstick[] chopsticks;
+
+        Hygienic(int seats) {
+            super(Strategy.HYGIENIC, seats);
+            chopsticks = new Chopstick[seats];
+            for (int i = 0; i < seats; i++) {
+                chopsticks[i] = new Chopstick();
+                // Chopstick i lies between seats i and i - 1. Dirty and with the lower-numbered of the
+                // two, so every seat yields to its lower neighbours and the precedence graph starts acyclic
+                chopsticks[i].owner = Math.min(i, (i - 1 + seats) % seats);
+            }
+        }
+
+        @Override
+        protected void acquire(int seat) {
+            int low = Math.min(left(seat), right(seat));
+            int high = Math.max(left(seat), right(seat));
+            Chopstick first = chopsticks[low];
+            Chopstick second = chopsticks[high];
+            while (true) {
+                Chopstick blocker;
+                first.lock.lock();
+                second.lock.lock();
+                try {
+                    blocker = claim(first, seat) ? null : first;
+                    if (!claim(second, seat)) {
+                        blocker = second;
+                    }
+                    if (blocker == null) {
+                        first.inUse = true;
+                        second.inUse = true;
+                        holding(seat, left(seat));
+                        holding(seat, right(seat));
+                        return;
+                    }
+                } finally {
+                    second.lock.unlock();
+                    first.lock.unlock();
+                }
+                // Wait on the missing chopstick alone, so its holder can still reach our other one
+                waiting(seat, blocker == first ? low : high);
+                blocker.lock.lock();
+                try {
+                    while (blocker.blocks(seat)) {
+                        blocker.changed.awaitUninterruptibly();
+                    }
+                } finally {
+                    blocker.lock.unlock();
+                }
+                waited(seat);
+            }
+        }
+
+        // Takes the chopstick over if the neighbour must give it up; a taken chopstick is cleaned
+        private static boolean claim(Chopstick chopstick, int seat) {
+            if (chopstick.blocks(seat)) {
+                return false;
+            }
+            if (chopstick.owner != seat) {
+                chopstick.owner = seat;
+                chopstick.dirty = false;
+            }
+            return true;
+        }
+
+        @Override
+        protected void release(int seat) {
+            putDown(chopsticks[left(seat)]);
+            putDown(chopsticks[right(seat)]);
+        }
+
+        private static void putDown(Chopstick chopstick) {
+            chopstick.lock.lock();
+            try {
+                chopstick.inUse = false;
+                chopstick.dirty = true;
+                chopstick.changed.signalAll();
+            } finally {
+                chopstick.lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isHeld(int chopstick) {
+            return chopsticks[chopstick].inUse;
+        }
+    }
+
+    private static final class LockFree extends ChopstickArbiter {
+        // One bit per chopstick, set while held
+        private final AtomicLongArray held;
+
+        LockFree(int seats) {
+            super(Strategy.LOCK_FREE, seats);
+            held = new AtomicLongArray((seats + 63) / 64);
+        }
+
+        @Override
+        protected void acquire(int seat) {
+            int low = Math.min(left(seat), right(seat));
+            int high = Math.max(left(seat), right(seat));
+            long backoff = MIN_BACKOFF_NANOS;
+            while (!tryAcquire(low, high)) {
+                backoff = backOff(backoff);
+            }
+            holding(seat, low);
+            holding(seat, high);
+        }
+
+        private boolean tryAcquire(int low, int high) {
+            if (low >>> 6 == high >>> 6) {
+                // Neighbours in the same word: both or neither in a single compare-and-set
+                return trySet(low >>> 6, (1L << low) | (1L << high));
+            }
+            if (!trySet(low >>> 6, 1L << low)) {
+                return false;
+            }
+            if (trySet(high >>> 6, 1L << high)) {
+                return true;
+            }
+            clear(low >>> 6, 1L << low);
+            return false;
+        }
+
+        private boolean trySet(int word, long mask) {
+            long bits = held.get(word);
+            while ((bits & mask) == 0) {
+                if (held.compareAndSet(word, bits, bits | mask)) {
+                    return true;
+                }
+                bits = held.get(word);
+            }
+            return false;
+        }
+
+        private void clear(int word, long mask) {
+            long bits = held.get(word);
+            while (!held.compareAndSet(word, bits, bits & ~mask)) {
+                bits = held.get(word);
+            }
+        }
+
+        @Override
+        protected void release(int seat) {
+            int left = left(seat);
+            int right = right(seat);
+            if (left >>> 6 == right >>> 6) {
+                clear(left >>> 6, (1L << left) | (1L << right));
+            } else {
+                clear(right >>> 6, 1L << right);
+                clear(left >>> 6, 1L << left);
+            }
+        }
+
+        @Override
+        public boolean isHeld(int chopstick) {
+            return (held.get(chopstick >>> 6) & (1L << chopstick)) != 0;
+        }
+    }
+}
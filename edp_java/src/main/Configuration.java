@@ -0,0 +1,449 @@
+package main;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Restaurant size and execution settings. The actor classes size their static tables from
+ * {@link #current()} when they are first loaded, so {@link #install(Configuration)} must run
+ * before any Philosopher, Seat, Waiter or Cook is touched.
+ *
+ * Settings come from a properties file and/or command line arguments of the form
+ * {@code --philosophers=100000}; arguments override the file.
+ */
+public final class Configuration {
+
+    public static final String PHILOSOPHERS = "philosophers";
+    public static final String SEATS = "seats";
+    public static final String WAITERS = "waiters";
+    public static final String TABLES = "tables";
+    public static final String COOKS = "cooks";
+    public static final String STATIONS = "stations";
+    public static final String BATCH = "batch";
+    public static final String ORDER_QUEUE = "order-queue";
+    public static final String COOK_PERMITS = "cook-permits";
+    public static final String ADMISSION = "admission";
+    public static final String KITCHEN = "kitchen";
+    public static final String MODE = "mode";
+    public static final String ENGINE = "engine";
+    public static final String DISPATCH = "dispatch";
+    public static final String CHOPSTICKS = "chopsticks";
+    public static final String ARRIVALS = "arrivals";
+    public static final String ARRIVAL_RATE = "arrival-rate";
+    public static final String ARRIVAL_TRACE = "arrival-trace";
+    public static final String BUDGET = "budget";
+    public static final String THINK_TIME = "think-time";
+    public static final String DURATION = "duration";
+    public static final String SEED = "seed";
+    public static final String LOG_LEVEL = "log-level";
+    public static final String LOG_FORMAT = "log-format";
+    public static final String LOG_FILE = "log-file";
+    public static final String JOURNAL = "journal";
+    public static final String STALL_DETECTOR = "stall-detector";
+    public static final String STARVATION_THRESHOLD = "starvation-threshold";
+    public static final String PATIENCE = "patience";
+    public static final String CHECK_ORDERS_INTERVAL = "check-orders-interval";
+    public static final String COOKING_TIME = "cooking-time";
+    public static final String CONFIG_FILE = "config";
+
+    public enum Engine {
+        // Real actors on real threads
+        THREADS,
+        // Single-threaded discrete-event replay on a virtual clock
+        SIMULATION,
+        // Real time as a chain of Flow stages with backpressure on a few shared threads
+        REACTIVE
+    }
+
+    // Philosophers per minute, a few times what five seats turn over
+    private static final double DEFAULT_ARRIVAL_RATE = 6;
+
+    // Milliseconds without a meal before a philosopher counts as starving, a dozen meal cycles
+    private static final long DEFAULT_STARVATION_THRESHOLD = 60_000;
+
+    // A day of restaurant activity, in milliseconds
+    private static final long DEFAULT_DURATION = 24L * 60 * 60 * 1000;
+
+    private static volatile Configuration current = new Configuration(new Properties());
+
+    public static Configuration current() {
+        return current;
+    }
+
+    public static void install(Configuration configuration) {
+        current = configuration;
+    }
+
+    public static Configuration fromArgs(String[] args) {
+        Properties properties = new Properties();
+        Properties overrides = new Properties();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                // Bare argument kept for compatibility with "java main.EnhancedDiningPhilosophers virtual"
+                overrides.setProperty(MODE, arg);
+                continue;
+            }
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                throw new IllegalArgumentException("Expected --key=value but got: " + arg);
+            }
+            overrides.setProperty(arg.substring(2, split), arg.substring(split + 1));
+        }
+        String file = overrides.getProperty(CONFIG_FILE);
+        if (file != null) {
+            try (InputStream in = Files.newInputStream(Paths.get(file))) {
+                properties.load(in);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not read configuration file: " + file, e);
+            }
+        }
+        properties.putAll(overrides);
+        return new Configuration(properties);
+    }
+
+    private final int philosophers;
+    private final int seats;
+    private final int waiters;
+    private final int tables;
+    private final int cooks;
+    private final int[] stations;
+    private final int batch;
+    private final int cookPermits;
+    private final int orderQueue;
+    private final AdmissionControl.Policy admission;
+    private final KitchenQueue.Scheduling kitchen;
+    private final ExecutionMode executionMode;
+    private final Engine engine;
+    private final Waiter.DispatchMode dispatchMode;
+    private final ChopstickArbiter.Strategy chopsticks;
+    private final ArrivalProcess.Kind arrivals;
+    private final double arrivalRate;
+    private final String arrivalTrace;
+    private final float budget;
+    private final long thinkTime;
+    private final long duration;
+    private final long seed;
+    private final EventLog.Level logLevel;
+    private final EventLog.Format logFormat;
+    private final String logFile;
+    private final String journal;
+    private final boolean stallDetector;
+    private final long starvationThreshold;
+    private final int patience;
+    private final int checkOrdersInterval;
+    private final int cookingTime;
+
+    private Configuration(Properties properties) {
+        this.philosophers = count(properties, PHILOSOPHERS, Name.PHILOSOPHER_NAMES.length);
+        // One seat, and one chopstick, per philosopher unless told otherwise
+        this.seats = count(properties, SEATS, philosophers);
+        this.waiters = count(properties, WAITERS, Name.WAITER_NAMES.length);
+        this.tables = count(properties, TABLES, 1);
+        this.stations = counts(properties, STATIONS, Order.Food.Type.values().length);
+        // Station cooks make up the whole kitchen
+        this.cooks = stations == null ? count(properties, COOKS, Name.COOK_NAMES.length) : sum(stations);
+        if (stations != null && properties.getProperty(COOKS) != null && count(properties, COOKS, cooks) != cooks) {
+            throw new IllegalArgumentException(String.format("%s adds up to %d cooks, not %s", STATIONS, cooks,
+                    properties.getProperty(COOKS)));
+        }
+        this.batch = count(properties, BATCH, 1);
+        // Enough admissions to fill every cook's batch, and room to queue a few rounds of them; every
+        // meal has an entree, so with stations the entree cooks set the pace and nobody batches
+        this.cookPermits = count(properties, COOK_PERMITS, stations == null ? cooks * batch : stations[0]);
+        this.orderQueue = count(properties, ORDER_QUEUE, 4 * cookPermits);
+        this.admission = parse(AdmissionControl.Policy.class,
+                properties.getProperty(ADMISSION, AdmissionControl.Policy.ADAPTIVE.name()));
+        this.kitchen = parse(KitchenQueue.Scheduling.class,
+                properties.getProperty(KITCHEN, KitchenQueue.Scheduling.EDF.name()));
+        this.executionMode = ExecutionMode.parse(properties.getProperty(MODE, ExecutionMode.PLATFORM.name()));
+        this.engine = parse(Engine.class, properties.getProperty(ENGINE, Engine.THREADS.name()));
+        this.dispatchMode = parse(Waiter.DispatchMode.class,
+                properties.getProperty(DISPATCH, Waiter.DispatchMode.EVENT_DRIVEN.name()));
+        this.chopsticks = parse(ChopstickArbiter.Strategy.class,
+                properties.getProperty(CHOPSTICKS, ChopstickArbiter.Strategy.ORDERED.name()));
+        this.arrivals = parse(ArrivalProcess.Kind.class,
+                properties.getProperty(ARRIVALS, ArrivalProcess.Kind.CLOSED.name()));
+        this.arrivalRate = decimal(properties, ARRIVAL_RATE, DEFAULT_ARRIVAL_RATE);
+        this.arrivalTrace = properties.getProperty(ARRIVAL_TRACE);
+        this.budget = (float) decimal(properties, BUDGET, Philosopher.STARTING_MONEY);
+        this.thinkTime = number(properties, THINK_TIME, Philosopher.THINKING_TIME);
+        this.duration = number(properties, DURATION, DEFAULT_DURATION);
+        this.seed = number(properties, SEED, 0);
+        this.logLevel = parse(EventLog.Level.class, properties.getProperty(LOG_LEVEL, EventLog.Level.DEBUG.name()));
+        this.logFormat = parse(EventLog.Format.class, properties.getProperty(LOG_FORMAT, EventLog.Format.TEXT.name()));
+        this.logFile = properties.getProperty(LOG_FILE);
+        this.journal = properties.getProperty(JOURNAL);
+        this.stallDetector = flag(properties, STALL_DETECTOR, true);
+        this.starvationThreshold = number(properties, STARVATION_THRESHOLD, DEFAULT_STARVATION_THRESHOLD);
+        this.patience = count(properties, PATIENCE, (int) Philosopher.TIMEOUT);
+        this.checkOrdersInterval = count(properties, CHECK_ORDERS_INTERVAL, Waiter.CHECK_ORDERS_INTERVAL);
+        this.cookingTime = count(properties, COOKING_TIME, Cook.COOKING_TIME);
+        if (seats < 2) {
+            throw new IllegalArgumentException("The table needs at least two seats.");
+        }
+        // The threaded restaurant packs its head counts into one word; the other engines keep their own
+        if (engine == Engine.THREADS
+                && (seats > RestaurantStatus.MAX_SEATS || philosophers > RestaurantStatus.MAX_PHILOSOPHERS)) {
+            throw new IllegalArgumentException(String.format("At most %,d seats and %,d philosophers are supported.",
+                    RestaurantStatus.MAX_SEATS, RestaurantStatus.MAX_PHILOSOPHERS));
+        }
+        if (seats < 2 * tables) {
+            throw new IllegalArgumentException(
+                    String.format("%d seats cannot be split into %d tables of at least two", seats, tables));
+        }
+        Utility.validateTime(thinkTime);
+        Utility.validateTime(starvationThreshold);
+        if (waiters < tables) {
+            throw new IllegalArgumentException(
+                    String.format("%d waiters cannot serve %d tables", waiters, tables));
+        }
+    }
+
+    private static int count(Properties properties, String key, int defaultValue) {
+        long count = number(properties, key, defaultValue);
+        if (count <= 0 || count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("%s must be a positive int but was: %d", key, count));
+        }
+        return (int) count;
+    }
+
+    // A comma-separated list of exactly length positive counts, or null if the key is not set
+    private static int[] counts(Properties properties, String key, int length) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return null;
+        }
+        String[] parts = value.split(",");
+        if (parts.length != length) {
+            throw new IllegalArgumentException(
+                    String.format("%s must be %d comma-separated counts but was: %s", key, length, value));
+        }
+        int[] counts = new int[length];
+        Properties part = new Properties();
+        for (int i = 0; i < length; i++) {
+            part.setProperty(key, parts[i]);
+            counts[i] = count(part, key, 0);
+        }
+        return counts;
+    }
+
+    private static int sum(int[] counts) {
+        long sum = 0;
+        for (int count : counts) {
+            sum += count;
+        }
+        if (sum > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many cooks: " + sum);
+        }
+        return (int) sum;
+    }
+
+    private static long number(Properties properties, String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim().replace("_", ""));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("%s must be a number but was: %s", key, value), e);
+        }
+    }
+
+    private static double decimal(Properties properties, String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        double number;
+        try {
+            number = Double.parseDouble(value.trim().replace("_", ""));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("%s must be a number but was: %s", key, value), e);
+        }
+        if (!(number > 0) || Double.isInfinite(number)) {
+            throw new IllegalArgumentException(String.format("%s must be positive but was: %s", key, value));
+        }
+        return number;
+    }
+
+    private static boolean flag(Properties properties, String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        switch (value.trim().toLowerCase()) {
+            case "on":
+            case "true":
+                return true;
+            case "off":
+            case "false":
+                return false;
+            default:
+                throw new IllegalArgumentException(String.format("%s must be on or off but was: %s", key, value));
+        }
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String value) {
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equalsIgnoreCase(value.replace('-', '_'))) {
+                return constant;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown %s: %s", type.getSimpleName(), value));
+    }
+
+    public int philosophers() {
+        return philosophers;
+    }
+
+    public int seats() {
+        return seats;
+    }
+
+    public int waiters() {
+        return waiters;
+    }
+
+    // Seats and waiters are split as evenly as possible across the tables
+    public int tables() {
+        return tables;
+    }
+
+    public int cooks() {
+        return cooks;
+    }
+
+    // Cooks at the entree, soup and dessert stations, or null when every cook makes whole meals
+    public int[] stations() {
+        return stations == null ? null : stations.clone();
+    }
+
+    // Most orders a cook drains from the order queue and prepares together
+    public int batch() {
+        return batch;
+    }
+
+    // Orders the kitchen always accepts; past this the admission policy decides
+    public int cookPermits() {
+        return cookPermits;
+    }
+
+    // Most orders that can wait for a cook
+    public int orderQueue() {
+        return orderQueue;
+    }
+
+    public AdmissionControl.Policy admission() {
+        return admission;
+    }
+
+    // Order in which cooks take waiting orders
+    public KitchenQueue.Scheduling kitchen() {
+        return kitchen;
+    }
+
+    public ExecutionMode executionMode() {
+        return executionMode;
+    }
+
+    public Engine engine() {
+        return engine;
+    }
+
+    public Waiter.DispatchMode dispatchMode() {
+        return dispatchMode;
+    }
+
+    public ChopstickArbiter.Strategy chopsticks() {
+        return chopsticks;
+    }
+
+    // Closed keeps the fixed population; the others inject philosophers as they arrive
+    public ArrivalProcess.Kind arrivals() {
+        return arrivals;
+    }
+
+    // Mean philosophers per minute for the Poisson, bursty and diurnal processes
+    public double arrivalRate() {
+        return arrivalRate;
+    }
+
+    public String arrivalTrace() {
+        return arrivalTrace;
+    }
+
+    // Dollars each philosopher walks in with, unless a trace says otherwise
+    public float budget() {
+        return budget;
+    }
+
+    // Milliseconds a philosopher thinks between meals, unless a trace says otherwise
+    public long thinkTime() {
+        return thinkTime;
+    }
+
+    // Milliseconds a simulation, or an open restaurant, runs for; a closed restaurant runs until everyone leaves
+    public long duration() {
+        return duration;
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    public EventLog.Level logLevel() {
+        return logLevel;
+    }
+
+    public EventLog.Format logFormat() {
+        return logFormat;
+    }
+
+    // Null means standard output for text logs and a default file for binary ones
+    public String logFile() {
+        return logFile;
+    }
+
+    // Directory for the event journal, or null to keep no journal
+    public String journal() {
+        return journal;
+    }
+
+    public boolean stallDetector() {
+        return stallDetector;
+    }
+
+    // Milliseconds a philosopher may go without a meal before the stall detector reports them
+    public long starvationThreshold() {
+        return starvationThreshold;
+    }
+
+    // The next three tune the simulation; the threaded restaurant keeps its compiled-in timings
+
+    // Milliseconds a philosopher waits for a waiter, and again for a cook to start
+    public int patience() {
+        return patience;
+    }
+
+    // Milliseconds between a polling waiter's rounds
+    public int checkOrdersInterval() {
+        return checkOrdersInterval;
+    }
+
+    // Milliseconds an average meal takes; every dish's time is scaled to match
+    public int cookingTime() {
+        return cookingTime;
+    }
+
+    @Override
+    public String toString() {
+        String kitchen = stations == null ? String.format("batches of %d", batch)
+                : String.format("%d entree, %d soup and %d dessert", stations[0], stations[1], stations[2]);
+        return String.format("%d philosophers, %d seats at %d tables, %d waiters, %d cooks (%s) on %s threads",
+                philosophers, seats, tables, waiters, cooks, kitchen, executionMode.name().toLowerCase());
+    }
+}
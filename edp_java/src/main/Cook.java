@@ -1,55 +1,153 @@
 package main;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
-public class Cook extends Thread {
+public class Cook implements Runnable {
 
     // Constants (Time in milliseconds)
-    private static final int COOKING_TIME = 6000;
-    private static final int COFFEE_BREAK_TIME = 3000;
+    // Average time for one meal on its own; each meal's own time comes from its dishes' estimates
+    static final int COOKING_TIME = 6000;
+    static final int COFFEE_BREAK_TIME = 3000;
+    static final int MEALS_BETWEEN_BREAKS = 4;
+    // Share of COOKING_TIME that each extra entree, and each extra portion of the same entree, adds to a batch
+    static final double EXTRA_ENTREE_FACTOR = 0.5;
+    static final double EXTRA_PORTION_FACTOR = 0.1;
 
     // Static
-    private static final Cook[] CHEFS = java.util.Arrays.stream(Name.COOK_NAMES)
-            .map(n -> new Cook(n.toString())).toArray(Cook[]::new);
+    private static final java.util.concurrent.atomic.AtomicInteger NEXT_NUMBER = new java.util.concurrent.atomic.AtomicInteger();
+
+    private static final Cook[] CHEFS;
+    static {
+        Cook[] chefs = new Cook[Configuration.current().cooks()];
+        if (Station.isEnabled()) {
+            // Staffed station by station, entree cooks first
+            int next = 0;
+            for (Station station : Station.list()) {
+                for (int i = 0; i < station.cooks(); i++, next++) {
+                    chefs[next] = new Cook(Name.cook(next), station);
+                }
+            }
+        } else {
+            java.util.Arrays.setAll(chefs, i -> new Cook(Name.cook(i)));
+        }
+        CHEFS = chefs;
+    }
 
     public static Cook[] list() {
         return CHEFS;
     }
 
-    protected static final BlockingQueue<Order> ORDER_QUEUE = new java.util.concurrent.ArrayBlockingQueue<>(1);
+    // How close to its deadline an order gets before it jumps a shortest-job-first queue
+    static final long STARVATION_SLACK = Philosopher.TIMEOUT / 2;
+
+    protected static final KitchenQueue<Order> ORDER_QUEUE = new KitchenQueue<>(Configuration.current().kitchen(),
+            Order::deadline, Order::cookingTime, TimeUnit.MILLISECONDS.toNanos(STARVATION_SLACK), System::nanoTime);
 
-    private static final Semaphore cookSemaphore = Waiter.cookSemaphore;
+    private static final int BATCH = Configuration.current().batch();
+
+    // Waiters ask before placing an order; cooks report back as meals leave the kitchen
+    static final AdmissionControl ADMISSION;
+    static {
+        Configuration configuration = Configuration.current();
+        // Every meal has an entree, so with stations the entree cooks' pace is the kitchen's
+        int cooks = Station.isEnabled() ? Station.of(Order.Food.Type.ENTREE).cooks() : configuration.cooks();
+        int stove = Station.isEnabled() ? cooks : cooks * BATCH;
+        ADMISSION = new AdmissionControl(configuration.admission(), configuration.cookPermits(),
+                stove + configuration.orderQueue(), Philosopher.TIMEOUT, cooks, 1.0 / COOKING_TIME);
+    }
+
+    // Staggers the breaks of cooks who make whole meals; station cooks share one per station
+    private static final BreakSchedule BREAKS = new BreakSchedule(Configuration.current().cooks(),
+            MEALS_BETWEEN_BREAKS, COOKING_TIME, COFFEE_BREAK_TIME);
+
+    /**
+     * Hands a newly admitted order to the kitchen: the shared queue, or each station with a dish for it.
+     */
+    static void placeOrder(Order order) {
+        if (Station.isEnabled()) {
+            Station.fork(order);
+        } else {
+            ORDER_QUEUE.put(order);
+        }
+    }
+
+    /**
+     * Time to cook a batch of orders covering the given number of distinct entrees. Shared prep
+     * and stove time make this grow more slowly than the number of orders; a batch of one takes
+     * exactly COOKING_TIME.
+     */
+    static long batchCookingTime(int orders, int entrees) {
+        return Math.round(COOKING_TIME
+                * (1 + EXTRA_ENTREE_FACTOR * (entrees - 1) + EXTRA_PORTION_FACTOR * (orders - entrees)));
+    }
 
     // Instance
     private final String name;
-    private int mealsPrepared = 0;
-    private boolean isOnBreak = false;
+    // Identifies the cook in the journal
+    private final int number = NEXT_NUMBER.getAndIncrement();
+    // Null for a cook who makes whole meals
+    private final Station station;
+    // Whole meals, or dishes for a station cook
+    private volatile int mealsPrepared = 0;
+    private volatile boolean isOnBreak = false;
+    // Owed a break that the schedule has put off
+    private boolean breakDue = false;
 
     public Cook(String name) {
+        this(name, null);
+    }
+
+    public Cook(String name, Station station) {
         this.name = name;
+        this.station = station;
     }
 
     public String name() {
         return name;
     }
 
+    public Station station() {
+        return station;
+    }
+
+    public int mealsPrepared() {
+        return mealsPrepared;
+    }
+
     public boolean isOnBreak() {
         return isOnBreak;
     }
 
     @Override
     public void run() {
+        if (station != null) {
+            cookDishes();
+            return;
+        }
+        java.util.List<Order> batch = new java.util.ArrayList<>(BATCH);
         while (!Thread.currentThread().isInterrupted()) {
             try {
-                System.out.println(String.format("Chef %s is waiting for an order.", name));
-                Order order = ORDER_QUEUE.take();
-                if (order != null) {
-                    cook(order);
-                    mealsPrepared++;
-                    if (mealsPrepared % 4 == 0) {
-                        takeCoffeeBreak();
-                    }
+                EventLog.log(EventLog.Type.COOK_WAITING, name);
+                batch.add(ORDER_QUEUE.take());
+                ORDER_QUEUE.drainTo(batch, BATCH - 1);
+                long cycleStart = now();
+                for (Order order : batch) {
+                    checkDeadline(order, cycleStart);
+                }
+                int mealsBefore = mealsPrepared;
+                int meals = batch.size();
+                if (batch.size() == 1) {
+                    cook(batch.get(0));
+                } else {
+                    cook(batch);
+                }
+                mealsPrepared += batch.size();
+                Metrics.add(Metrics.Count.MEALS_PREPARED, batch.size());
+                batch.clear();
+                ADMISSION.recordCycle(meals, now() - cycleStart);
+                breakDue |= mealsPrepared / MEALS_BETWEEN_BREAKS > mealsBefore / MEALS_BETWEEN_BREAKS;
+                if (breakDue) {
+                    takeCoffeeBreak();
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -59,19 +157,134 @@ public class Cook extends Thread {
     }
 
     private void cook(Order order) throws InterruptedException {
-        System.out.println(String.format("Chef %s is cooking the %s for Philosopher %s.", name, order.mealString(),
-                order.philosopher().name()));
-        Thread.sleep(COOKING_TIME);
+        EventLog.log(EventLog.Type.COOK_COOKING, name, order);
+        Metrics.recordSince(Metrics.Latency.ORDER_TO_COOK, order.timeOrdered());
+        long start = System.nanoTime();
+        Thread.sleep(order.cookingTime());
+        Metrics.recordSince(Metrics.Latency.COOK_TIME, start);
+        plate(order);
+        ADMISSION.completed(1);
+    }
+
+    private static final java.util.Comparator<Order> BY_ENTREE = java.util.Comparator.comparingInt(Order::entreeId);
+
+    private void cook(java.util.List<Order> batch) throws InterruptedException {
+        // Group the batch by entree so each dish is prepared in one go
+        batch.sort(BY_ENTREE);
+        int entrees = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (i == 0 || batch.get(i).entreeId() != batch.get(i - 1).entreeId()) {
+                entrees++;
+            }
+        }
+        EventLog.log(EventLog.Type.COOK_COOKING_BATCH, name, null, null, batch.size(), entrees, 0, 0);
+        for (Order order : batch) {
+            Metrics.recordSince(Metrics.Latency.ORDER_TO_COOK, order.timeOrdered());
+        }
+        long start = System.nanoTime();
+        Thread.sleep(batchCookingTime(batch.size(), entrees));
+        Metrics.recordSince(Metrics.Latency.COOK_TIME, start);
+        for (Order order : batch) {
+            plate(order);
+        }
+        ADMISSION.completed(batch.size());
+    }
+
+    // A station cook's loop: one dish at a time from the station's queue
+    private void cookDishes() {
+        KitchenQueue<Order> queue = station.queue();
+        // Entrees pace the kitchen, so only they answer to the admission controller
+        boolean entrees = station.type() == Order.Food.Type.ENTREE;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                EventLog.log(EventLog.Type.COOK_WAITING, name);
+                Order order = queue.take();
+                long cycleStart = now();
+                if (entrees) {
+                    checkDeadline(order, cycleStart);
+                    Metrics.recordSince(Metrics.Latency.ORDER_TO_COOK, order.timeOrdered());
+                }
+                int dishesBefore = mealsPrepared;
+                cookDish(order);
+                mealsPrepared++;
+                if (entrees) {
+                    ADMISSION.recordCycle(1, now() - cycleStart);
+                }
+                breakDue |= mealsPrepared / MEALS_BETWEEN_BREAKS > dishesBefore / MEALS_BETWEEN_BREAKS;
+                if (breakDue) {
+                    takeCoffeeBreak();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void cookDish(Order order) throws InterruptedException {
+        EventLog.log(EventLog.Type.COOK_COOKING_DISH, name, order.dish(station.type()), order, 0, 0, 0, 0);
+        long start = System.nanoTime();
+        Thread.sleep(order.prepTime(station.type()));
+        long cooked = System.nanoTime() - start;
+        Metrics.histogram(Metrics.Latency.COOK_TIME).record(cooked);
+        station.recordDish(cooked);
+        // Another station may still be cooking; if so, its cook plates the meal and this one lets go
+        if (order.dishDone()) {
+            Metrics.increment(Metrics.Count.MEALS_PREPARED);
+            plate(order);
+            ADMISSION.completed(1);
+        }
+    }
+
+    private static void checkDeadline(Order order, long startedAt) {
+        // Admitted on the promise that a cook would start it by its deadline
+        if (ADMISSION.started(TimeUnit.NANOSECONDS.toMillis(order.deadline()), startedAt)) {
+            Metrics.increment(Metrics.Count.DEADLINE_MISSES);
+            Metrics.recordSince(Metrics.Latency.DEADLINE_LATENESS, order.deadline());
+        }
+    }
+
+    private void plate(Order order) {
+        Metrics.recordSince(Metrics.Latency.KITCHEN_TIME, order.timeOrdered());
+        // Log first: once on the counter the order can be served, paid for and recycled
+        EventLog.log(EventLog.Type.COOK_FINISHED, name, order);
+        Journal.record(Journal.Type.COOKED, order.philosopher().number(), number, order.mealId());
         Counter.placeCompletedMeal(order);
-        System.out.println(String.format("Chef %s has finished cooking the %s for Philosopher %s.", name,
-                order.mealString(), order.philosopher().name()));
-        cookSemaphore.release();
     }
 
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * Takes the break the cook is owed if the schedule allows it now; otherwise the cook keeps
+     * cooking and asks again after the next meal. A cook who paces the kitchen leaves admission
+     * control's count for the break, so waiters stop placing orders on their account.
+     */
     private void takeCoffeeBreak() throws InterruptedException {
+        BreakSchedule breaks = station == null ? BREAKS : station.breaks();
+        if (!breaks.tryStart(now())) {
+            return;
+        }
+        breakDue = false;
+        boolean pacesKitchen = station == null || station.type() == Order.Food.Type.ENTREE;
+        if (pacesKitchen) {
+            ADMISSION.cookLeft();
+        }
         isOnBreak = true;
-        System.out.println(String.format("Chef %s has returned from a coffee break.", name));
-        Thread.sleep(COFFEE_BREAK_TIME);
-        isOnBreak = false;
+        try {
+            Thread.sleep(COFFEE_BREAK_TIME);
+        } finally {
+            isOnBreak = false;
+            breaks.end();
+            if (pacesKitchen) {
+                ADMISSION.cookReturned();
+            }
+        }
+        EventLog.log(EventLog.Type.COOK_COFFEE_BREAK, name);
+    }
+
+    static BreakSchedule breaks() {
+        return BREAKS;
     }
 }
\ No newline at end of file
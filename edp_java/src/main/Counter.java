@@ -3,9 +3,17 @@ package main;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
+/**
+ * The pass between kitchen and dining room. Each table has its own counter with one lane per waiter
+ * in its section, so each waiter mostly polls its own lane and cooks spread their puts over many
+ * rings instead of one queue lock; a waiter with an empty lane steals from the others at its table.
+ * A meal never leaves its table's lanes, so the waiter woken for it is always one who can find it.
+ */
 public class Counter {
     private static final BlockingQueue<Order> orders = new LinkedBlockingQueue<>();
-    private static final BlockingQueue<Order> completedMeals = new LinkedBlockingQueue<>();
+
+    // Room for every order the kitchen can hold at once in each lane, before cooks have to wait
+    private static final int LANE_CAPACITY = MpmcRing.capacityFor(Math.max(16, Configuration.current().cookPermits()));
 
     private Counter() {
     }
@@ -13,7 +21,7 @@ public class Counter {
     public static void placeOrder(Order order) {
         try {
             orders.put(order);
-            System.out.println(String.format("Order for %s placed on counter.", order.philosopher().name()));
+            EventLog.log(EventLog.Type.COUNTER_ORDER_PLACED, null, order);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
@@ -22,8 +30,7 @@ public class Counter {
     public static Order takeOrder() {
         try {
             Order order = orders.take();
-            System.out
-                    .println(String.format("Order for %s picked up from counter.", order.philosopher().name()));
+            EventLog.log(EventLog.Type.COUNTER_ORDER_PICKED_UP, null, order);
             return order;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -39,25 +46,94 @@ public class Counter {
         return orders.size();
     }
 
+    // One empty lane per waiter of a table's section
+    static MpmcRing<Order>[] newLanes(int count) {
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        MpmcRing<Order>[] lanes = new MpmcRing[count];
+        java.util.Arrays.setAll(lanes, i -> new MpmcRing<>(LANE_CAPACITY));
+        return lanes;
+    }
+
+    /**
+     * Puts the meal in the lane of the waiter who took the order, or the next lane with room at the
+     * same table. If every lane is full the cook waits for a waiter to clear some space.
+     */
     public static void placeCompletedMeal(Order order) {
-        try {
-            completedMeals.put(order);
-            System.out.println(String.format("Order for %s placed on counter.", order.philosopher().name()));
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        order.markCooked();
+        // Read once: the meal goes on the counter of the table whose waiters are woken for it
+        Table table = order.philosopher().table();
+        MpmcRing<Order>[] lanes = table.counterLanes();
+        int lane = Math.floorMod(order.lane(), lanes.length);
+        while (!offer(lanes, lane, order)) {
+            Thread.yield();
+        }
+        Metrics.increment(Metrics.Count.MEALS_ON_COUNTER);
+        table.signalCompletedMeal();
+        EventLog.log(EventLog.Type.COUNTER_ORDER_PLACED, null, order);
+    }
+
+    private static boolean offer(MpmcRing<Order>[] lanes, int lane, Order order) {
+        for (int i = 0; i < lanes.length; i++) {
+            if (lanes[(lane + i) % lanes.length].offer(order)) {
+                return true;
+            }
         }
+        return false;
     }
 
+    // Only a hint: another waiter may take the meal first, so callers must still handle a null poll
     public static boolean hasCompletedMeals() {
-        return !completedMeals.isEmpty();
+        for (Table table : Restaurant.current().tables()) {
+            for (MpmcRing<Order> lane : table.counterLanes()) {
+                if (!lane.isEmpty()) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
+    public static int completedMealCount() {
+        int count = 0;
+        for (Table table : Restaurant.current().tables()) {
+            for (MpmcRing<Order> lane : table.counterLanes()) {
+                count += lane.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Takes a meal from any table's counter, the first table first, for callers that serve the
+     * whole dining room rather than one section.
+     */
     public static Order pollCompletedMeal() {
-        Order order = completedMeals.poll();
-        if (order != null) {
-            System.out
-                    .println(String.format("Order for %s picked up from counter.", order.philosopher().name()));
+        for (Table table : Restaurant.current().tables()) {
+            Order order = pollCompletedMeal(table, 0);
+            if (order != null) {
+                return order;
+            }
+        }
+        return null;
+    }
+
+    public static Order pollCompletedMeal(Table table) {
+        return pollCompletedMeal(table, 0);
+    }
+
+    /**
+     * Takes a meal from the given lane of the table's counter, or steals one from the next
+     * non-empty lane at the same table.
+     */
+    public static Order pollCompletedMeal(Table table, int lane) {
+        MpmcRing<Order>[] lanes = table.counterLanes();
+        for (int i = 0; i < lanes.length; i++) {
+            Order order = lanes[(lane + i) % lanes.length].poll();
+            if (order != null) {
+                EventLog.log(EventLog.Type.COUNTER_ORDER_PICKED_UP, null, order);
+                return order;
+            }
         }
-        return order;
+        return null;
     }
 }
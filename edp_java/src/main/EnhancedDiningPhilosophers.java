@@ -1,32 +1,85 @@
 package main;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
 public class EnhancedDiningPhilosophers {
 
-    static final Object[] CHOPSTICKS;
-    static {
-        Object[] chopsticks = new Object[Philosopher.list().length];
-        java.util.Arrays.setAll(chopsticks, i -> new Object());
-        CHOPSTICKS = chopsticks;
-    }
+    // Lets philosophers in when the restaurant is open to arrivals, or null for a closed population
+    private static LoadGenerator arrivals;
+
+    // How long closing waits for interrupted actors to put down their chopsticks and leave
+    private static final long SHUTDOWN_GRACE = 5000;
 
+    // Usage: java main.EnhancedDiningPhilosophers [--config=file] [--philosophers=N] [--seats=N]
+    // [--waiters=N] [--cooks=N | --stations=entree,soup,dessert] [--mode=platform|virtual] [--dispatch=polling|event-driven]
+    // [--chopsticks=ordered|try-lock|hygienic|lock-free|left-first]
+    // [--stall-detector=on|off] [--starvation-threshold=millis]
+    // [--arrivals=closed|poisson|bursty|diurnal|trace] [--arrival-rate=perMinute] [--arrival-trace=path]
+    // [--budget=dollars] [--think-time=millis]
+    // [--engine=threads|simulation|reactive] [--duration=millis] [--seed=N]
+    // [--log-level=debug|info|warn|off] [--log-format=text|binary] [--log-file=path] [--journal=directory]
     public static void main(String[] args) {
-        System.out.println("The restaurant is now open for business.");
+        // Must happen before any actor class is loaded, as they size their tables from it
+        Configuration configuration = Configuration.fromArgs(args);
+        Configuration.install(configuration);
+        if (configuration.engine() == Configuration.Engine.SIMULATION) {
+            System.out.println(String.format("Simulating %s.", configuration));
+            System.out.println(new Simulation(configuration).run());
+            return;
+        }
+        if (configuration.engine() == Configuration.Engine.REACTIVE) {
+            Metrics.registerMBean();
+            System.out.println(String.format("Running %s as a reactive pipeline.", configuration));
+            System.out.println(new Pipeline(configuration).run());
+            return;
+        }
+        ExecutorService actors = configuration.executionMode().newExecutor();
+        Metrics.registerMBean();
+        EventLog.log(EventLog.Type.RESTAURANT_OPEN);
+        EventLog.log(EventLog.Type.STAFFING, null, configuration, null, 0, 0, 0, 0);
 
         for (Cook cook : Cook.list()) {
-            cook.setDaemon(true);
-            cook.start();
+            actors.execute(cook);
         }
 
         for (Waiter waiter : Waiter.list()) {
-            waiter.setDaemon(true);
-            waiter.start();
+            actors.execute(waiter);
         }
 
         for (Philosopher philosopher : Philosopher.list()) {
-            philosopher.start();
+            actors.execute(philosopher);
+        }
+
+        ArrivalProcess process = ArrivalProcess.create(configuration);
+        if (process != null) {
+            arrivals = new LoadGenerator(process, actors, configuration.duration(), configuration.seed());
+            Thread generator = new Thread(arrivals, "Arrivals");
+            generator.setDaemon(true);
+            generator.start();
         }
 
         monitorRestaurant();
+        // Cooks and waiters never finish on their own
+        actors.shutdownNow();
+        // The reports below read state the actors change, so let them stop first
+        try {
+            actors.awaitTermination(SHUTDOWN_GRACE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        EventLog.log(EventLog.Type.SERVICE_LATENCIES, null, Metrics.summary(), null, 0, 0, 0, 0);
+        if (arrivals != null) {
+            EventLog.log(EventLog.Type.ARRIVAL_REPORT, null, arrivals.report(), null, 0, 0, 0, 0);
+        }
+        EventLog.log(EventLog.Type.CHOPSTICK_REPORT, null, Restaurant.current().chopstickReport(), null, 0, 0, 0, 0);
+        EventLog.log(EventLog.Type.LEDGER_REPORT, null, Ledger.snapshot(), null, 0, 0, 0, 0);
+        EventLog.log(EventLog.Type.STALL_REPORT, null, StallDetector.report(), null, 0, 0, 0, 0);
+        if (Station.isEnabled()) {
+            EventLog.log(EventLog.Type.STATION_REPORT, null, Station.report(), null, 0, 0, 0, 0);
+        }
+        Journal.close();
+        EventLog.close();
     }
 
     private static void monitorRestaurant() {
@@ -36,7 +89,7 @@ public class EnhancedDiningPhilosophers {
                 Thread.sleep(1000);
 
                 if (allPhilosophersLeft()) {
-                    System.out.println("The restaurant has closed down.");
+                    EventLog.log(EventLog.Type.RESTAURANT_CLOSED);
                     done = true;
                 } else {
                     logRestaurantStatus();
@@ -49,51 +102,23 @@ public class EnhancedDiningPhilosophers {
     }
 
     private static boolean allPhilosophersLeft() {
-        for (Philosopher philosopher : Philosopher.list()) {
-            if (philosopher.isAlive()) {
-                return false;
-            }
+        if (arrivals != null) {
+            // An open restaurant closes at the end of its duration, whoever is still inside
+            return arrivals.elapsed() >= Configuration.current().duration()
+                    || (arrivals.isFinished() && RestaurantStatus.snapshot().activePhilosophers() == 0);
         }
-        return true;
+        return RestaurantStatus.snapshot().activePhilosophers() == 0;
     }
 
+    // Reads the incrementally kept counts, so a status line costs the same at any table size
     private static void logRestaurantStatus() {
-        int activePhilosophers = 0;
-        for (Philosopher philosopher : Philosopher.list()) {
-            if (philosopher.isAlive()) {
-                activePhilosophers++;
-            }
-        }
-
-        int occupiedSeats = 0;
-        java.util.List<Integer> occupiedSeatNumbers = new java.util.ArrayList<>();
-        for (Seat seat : Seat.seats()) {
-            if (seat.isOccupied()) {
-                occupiedSeats++;
-                occupiedSeatNumbers.add(seat.number());
-            }
+        if (!EventLog.isEnabled(EventLog.Type.RESTAURANT_STATUS)) {
+            return;
         }
-
-        java.util.Set<Integer> heldChopsticks = Philosopher.getHeldChopsticks();
-        java.util.List<Integer> chopstickNumbers = new java.util.ArrayList<>(heldChopsticks);
-        java.util.Collections.sort(chopstickNumbers);
-
-        if (activePhilosophers > 0) {
-            String seatInfo = occupiedSeats + " seats taken (" +
-                    occupiedSeatNumbers.stream()
-                            .map(String::valueOf)
-                            .collect(java.util.stream.Collectors.joining(", "))
-                    + ")";
-
-            String chopstickInfo = heldChopsticks.size() + " chopsticks taken (" +
-                    chopstickNumbers.stream()
-                            .map(String::valueOf)
-                            .collect(java.util.stream.Collectors.joining(", "))
-                    + ")";
-
-            System.out.println(
-                    String.format("%nRestaurant status: %d active philosophers, %s, %s, %d orders on counter%n",
-                            activePhilosophers, seatInfo, chopstickInfo, Counter.orderCount()));
+        RestaurantStatus.Snapshot status = RestaurantStatus.snapshot();
+        if (status.activePhilosophers() > 0) {
+            EventLog.log(EventLog.Type.RESTAURANT_STATUS, null, status, null, 0, Counter.completedMealCount(), 0,
+                    0);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,364 @@
+package main;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous restaurant log. Actors claim a pre-allocated slot in a ring buffer and fill in an
+ * event type plus a few references and primitives; a single writer thread renders the slots as
+ * text or binary records. Logging never formats strings or touches I/O on the calling thread.
+ *
+ * Settings: --log-level=debug|info|warn|off, --log-format=text|binary and --log-file=path
+ * (binary logs default to restaurant-events.bin; text logs default to standard output).
+ */
+public final class EventLog {
+
+    public enum Level {
+        DEBUG, INFO, WARN, OFF
+    }
+
+    public enum Format {
+        TEXT, BINARY
+    }
+
+    /**
+     * Every message the restaurant logs. Templates name the fields they use: {actor}, {other},
+     * {patron} and {meal} (of the order), {count}, {number}, {amount} and {balance} (as dollars).
+     */
+    public enum Type {
+        RESTAURANT_OPEN(Level.INFO, "The restaurant is now open for business."),
+        STAFFING(Level.INFO, "Tonight's staffing: {other}."),
+        RESTAURANT_STATUS(Level.INFO,
+                "%nRestaurant status: {other}, {number} orders on counter%n"),
+        RESTAURANT_CLOSED(Level.INFO, "The restaurant has closed down."),
+        SERVICE_LATENCIES(Level.INFO, "Service latencies:{other}"),
+        CHOPSTICK_REPORT(Level.INFO, "Chopsticks {other}"),
+        ARRIVAL_REPORT(Level.INFO, "Arrivals {other}"),
+        LEDGER_REPORT(Level.INFO, "Ledger: {other}"),
+        STALL_REPORT(Level.INFO, "Stalls: {other}"),
+        STATION_REPORT(Level.INFO, "Stations:{other}"),
+        DEADLOCK_DETECTED(Level.WARN, "Deadlock detected: {other}"),
+        PIPELINE_FAILED(Level.WARN, "Pipeline {actor} failed: {other}"),
+
+        COOK_WAITING(Level.DEBUG, "Chef {actor} is waiting for an order."),
+        COOK_COOKING(Level.INFO, "Chef {actor} is cooking the {meal} for Philosopher {patron}."),
+        COOK_COOKING_BATCH(Level.INFO,
+                "Chef {actor} is cooking a batch of {count} orders covering {number} entrees."),
+        COOK_COOKING_DISH(Level.INFO, "Chef {actor} is cooking the {other} for Philosopher {patron}."),
+        COOK_FINISHED(Level.INFO, "Chef {actor} has finished cooking the {meal} for Philosopher {patron}."),
+        COOK_COFFEE_BREAK(Level.INFO, "Chef {actor} has returned from a coffee break."),
+
+        COUNTER_ORDER_PLACED(Level.DEBUG, "Order for {patron} placed on counter."),
+        COUNTER_ORDER_PICKED_UP(Level.DEBUG, "Order for {patron} picked up from counter."),
+
+        WAITER_READY(Level.INFO, "Waiter {actor} is ready to take orders."),
+        WAITER_TOOK_ORDER(Level.INFO, "Waiter {actor} has taken order for {meal} from philosopher {patron}."),
+        WAITER_PLACED_ORDER(Level.INFO, "Waiter {actor} placed order for {patron}."),
+        WAITER_KITCHEN_FULL(Level.WARN,
+                "Waiter {actor} cannot place order for {patron} - kitchen backed up. Giving {amount} coupon."),
+        WAITER_SERVING(Level.INFO, "Waiter {actor} is serving philosopher {patron} {meal}."),
+
+        PHILOSOPHER_SEATED(Level.INFO, "Philosopher {actor} is being seated in chair {number}."),
+        PHILOSOPHER_NO_SEAT(Level.DEBUG, "Philosopher {actor} could not get a seat."),
+        PHILOSOPHER_CALLING_WAITER(Level.DEBUG, "Philosopher {actor} is about to call for a waiter."),
+        PHILOSOPHER_WAITING_FOR_WAITER(Level.DEBUG, "Philosopher {actor} is waiting for a waiter."),
+        PHILOSOPHER_GOT_ORDER(Level.DEBUG, "Philosopher {actor} got an order from waiter."),
+        PHILOSOPHER_GAVE_UP(Level.WARN, "Philosopher {actor} gave up waiting for a waiter."),
+        PHILOSOPHER_STARVING(Level.WARN, "Philosopher {actor} {other}."),
+        PHILOSOPHER_LEFT_UNSERVED(Level.WARN, "Philosopher {actor} has left the restaurant without being served."),
+        PHILOSOPHER_WAITING_FOR_FOOD(Level.DEBUG, "Philosopher {actor} got waiter, waiting for food."),
+        PHILOSOPHER_ABOUT_TO_EAT(Level.INFO, "Philosopher {actor} got food, about to eat."),
+        PHILOSOPHER_PAID(Level.INFO, "Philosopher {actor} has paid {amount} and left the restaurant."),
+        PHILOSOPHER_CANNOT_AFFORD(Level.WARN,
+                "Philosopher {actor} cannot afford the meal ({amount}) and is leaving for good. Balance: {balance}"),
+        PHILOSOPHER_COUPON(Level.INFO, "Philosopher {actor} received a {amount} coupon. New balance: {balance}"),
+        PHILOSOPHER_LEFT_FOR_GOOD(Level.INFO, "Philosopher {actor} has left the restaurant for good.");
+
+        private final Level level;
+        // Template split into alternating literal text and field names, parsed once
+        private final String[] parts;
+
+        Type(Level level, String template) {
+            this.level = level;
+            this.parts = template.replace("%n", System.lineSeparator()).split("[{}]");
+        }
+
+        public Level level() {
+            return level;
+        }
+    }
+
+    // One reusable record per ring slot
+    private static final class Slot {
+        private volatile long published = -1;
+        private Type type;
+        private long time;
+        private Object actor;
+        private Object other;
+        // Copied from the order when logged, as orders are recycled once served
+        private Object patron;
+        private int meal;
+        private long count;
+        private long number;
+        private double amount;
+        private double balance;
+    }
+
+    private static final int CAPACITY = 1 << 16;
+    private static final int MASK = CAPACITY - 1;
+
+    private static final Level LEVEL;
+    private static final Format FORMAT;
+    private static final Slot[] RING;
+    private static final AtomicLong CLAIMED = new AtomicLong();
+    private static volatile long written = 0;
+    private static volatile boolean closing = false;
+    private static final Thread WRITER;
+
+    static {
+        Configuration configuration = Configuration.current();
+        LEVEL = configuration.logLevel();
+        FORMAT = configuration.logFormat();
+        if (LEVEL == Level.OFF) {
+            RING = null;
+            WRITER = null;
+        } else {
+            RING = new Slot[CAPACITY];
+            java.util.Arrays.setAll(RING, i -> new Slot());
+            Sink sink = FORMAT == Format.BINARY ? new BinarySink(configuration.logFile())
+                    : new TextSink(configuration.logFile());
+            WRITER = new Thread(() -> drain(sink), "EventLog writer");
+            WRITER.setDaemon(true);
+            WRITER.start();
+        }
+    }
+
+    private EventLog() {
+        // Prevent instantiation
+    }
+
+    public static boolean isEnabled(Type type) {
+        return type.level.ordinal() >= LEVEL.ordinal();
+    }
+
+    public static void log(Type type) {
+        log(type, null, null, null, 0, 0, 0, 0);
+    }
+
+    public static void log(Type type, Object actor) {
+        log(type, actor, null, null, 0, 0, 0, 0);
+    }
+
+    public static void log(Type type, Object actor, Order order) {
+        log(type, actor, null, order, 0, 0, 0, 0);
+    }
+
+    public static void log(Type type, Object actor, long number) {
+        log(type, actor, null, null, 0, number, 0, 0);
+    }
+
+    public static void log(Type type, Object actor, double amount, double balance) {
+        log(type, actor, null, null, 0, 0, amount, balance);
+    }
+
+    public static void log(Type type, Object actor, Object other, Order order, long count, long number,
+            double amount, double balance) {
+        if (!isEnabled(type)) {
+            return;
+        }
+        long sequence = CLAIMED.getAndIncrement();
+        // Only waits if the writer has fallen a whole ring behind
+        while (sequence - written >= CAPACITY) {
+            Thread.yield();
+        }
+        Slot slot = RING[(int) (sequence & MASK)];
+        slot.type = type;
+        slot.time = System.currentTimeMillis();
+        slot.actor = actor;
+        slot.other = other;
+        slot.patron = order == null ? null : order.philosopher().name();
+        slot.meal = order == null ? -1 : order.mealId();
+        slot.count = count;
+        slot.number = number;
+        slot.amount = amount;
+        slot.balance = balance;
+        slot.published = sequence;
+    }
+
+    /**
+     * Writes out everything logged so far and stops the writer. Later events are dropped.
+     */
+    public static void close() {
+        if (WRITER == null) {
+            return;
+        }
+        closing = true;
+        LockSupport.unpark(WRITER);
+        try {
+            WRITER.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void drain(Sink sink) {
+        long next = 0;
+        try {
+            while (true) {
+                Slot slot = RING[(int) (next & MASK)];
+                if (slot.published == next) {
+                    sink.write(slot);
+                    // Drop references so logged actors can be collected
+                    slot.actor = null;
+                    slot.other = null;
+                    slot.patron = null;
+                    written = ++next;
+                } else if (closing && next >= CLAIMED.get()) {
+                    break;
+                } else {
+                    sink.flush();
+                    LockSupport.parkNanos(100_000);
+                }
+            }
+            sink.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the event log.", e);
+        }
+    }
+
+    private interface Sink {
+        void write(Slot slot) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    private static final class TextSink implements Sink {
+        private final Writer out;
+        private final StringBuilder line = new StringBuilder(160);
+        private char[] chars = new char[160];
+
+        TextSink(String file) {
+            try {
+                this.out = new BufferedWriter(new OutputStreamWriter(
+                        file == null ? System.out : new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open log file: " + file, e);
+            }
+        }
+
+        @Override
+        public void write(Slot slot) throws IOException {
+            line.setLength(0);
+            String[] parts = slot.type.parts;
+            for (int i = 0; i < parts.length; i++) {
+                if (i % 2 == 0) {
+                    line.append(parts[i]);
+                } else {
+                    appendField(parts[i], slot);
+                }
+            }
+            line.append(System.lineSeparator());
+            // Copy through a reused array; Writer.append(CharSequence) would allocate a String per line
+            if (chars.length < line.length()) {
+                chars = new char[line.capacity()];
+            }
+            line.getChars(0, line.length(), chars, 0);
+            out.write(chars, 0, line.length());
+        }
+
+        private void appendField(String field, Slot slot) {
+            switch (field) {
+                case "actor":
+                    line.append(slot.actor);
+                    break;
+                case "other":
+                    line.append(slot.other);
+                    break;
+                case "patron":
+                    line.append(slot.patron);
+                    break;
+                case "meal":
+                    line.append(Order.mealString(slot.meal));
+                    break;
+                case "count":
+                    line.append(slot.count);
+                    break;
+                case "number":
+                    line.append(slot.number);
+                    break;
+                case "amount":
+                    appendDollars(slot.amount);
+                    break;
+                case "balance":
+                    appendDollars(slot.balance);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown log field: " + field);
+            }
+        }
+
+        private void appendDollars(double value) {
+            long cents = Math.round(value * 100);
+            if (cents < 0) {
+                line.append('-');
+                cents = -cents;
+            }
+            line.append('$').append(cents / 100).append('.');
+            if (cents % 100 < 10) {
+                line.append('0');
+            }
+            line.append(cents % 100);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * Fixed field order per record: type ordinal (byte), time (long), actor, other, patron and
+     * meal (UTF strings, empty if absent), count and number (long), amount and balance (double).
+     */
+    private static final class BinarySink implements Sink {
+        private final DataOutputStream out;
+
+        BinarySink(String file) {
+            String path = file == null ? "restaurant-events.bin" : file;
+            try {
+                this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open log file: " + path, e);
+            }
+        }
+
+        @Override
+        public void write(Slot slot) throws IOException {
+            out.writeByte(slot.type.ordinal());
+            out.writeLong(slot.time);
+            out.writeUTF(slot.actor == null ? "" : slot.actor.toString());
+            out.writeUTF(slot.other == null ? "" : slot.other.toString());
+            out.writeUTF(slot.patron == null ? "" : slot.patron.toString());
+            out.writeUTF(slot.meal < 0 ? "" : Order.mealString(slot.meal));
+            out.writeLong(slot.count);
+            out.writeLong(slot.number);
+            out.writeDouble(slot.amount);
+            out.writeDouble(slot.balance);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
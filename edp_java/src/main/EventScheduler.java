@@ -0,0 +1,77 @@
+package main;
+
+import java.util.PriorityQueue;
+
+/**
+ * A virtual clock driven by a priority queue of timed events. Time only moves when the next
+ * event is taken, so a simulated day costs as much as the events in it, not 24 hours.
+ * Not thread safe: a scheduler and everything it drives run on one thread.
+ */
+public class EventScheduler {
+
+    public static final class Event implements Comparable<Event> {
+        private final long time;
+        private final long sequence;
+        private final Runnable action;
+        private boolean cancelled = false;
+
+        private Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        public long time() {
+            return time;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        // Events at the same instant run in the order they were scheduled
+        @Override
+        public int compareTo(Event other) {
+            if (time != other.time) {
+                return Long.compare(time, other.time);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long now = 0;
+    private long nextSequence = 0;
+    private long processed = 0;
+
+    // Virtual time in milliseconds since the simulation started
+    public long now() {
+        return now;
+    }
+
+    public long processed() {
+        return processed;
+    }
+
+    public Event schedule(long delay, Runnable action) {
+        Utility.validateTime(delay);
+        Event event = new Event(now + delay, nextSequence++, action);
+        events.add(event);
+        return event;
+    }
+
+    /**
+     * Runs events in time order until none are left or the next one is after {@code endTime}.
+     */
+    public void runUntil(long endTime) {
+        while (!events.isEmpty() && events.peek().time <= endTime) {
+            Event event = events.poll();
+            if (event.cancelled) {
+                continue;
+            }
+            now = event.time;
+            processed++;
+            event.action.run();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package main;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the simulation over a grid of settings and tabulates throughput, coupon rate, order-to-plate
+ * percentiles and revenue for each. Every combination of the values given is a point of the grid,
+ * run once per seed. A simulation owns all of its state, so the runs go in parallel on a fork-join
+ * pool, one per core by default. The results describe the {@link Simulation} model, which shares
+ * admission, scheduling and break policies with the threaded restaurant but not its actors.
+ *
+ * Settings take the keys {@link Configuration} does for the settings the simulation models (see
+ * {@link Simulation#SETTINGS}), with alternatives separated by commas or given as a range:
+ * {@code --cooks=2..6 --patience=2000,2500,3000}. Keys that only shape the threaded restaurant,
+ * such as tables or stations, are rejected rather than swept to no effect.
+ *
+ * Usage: java -cp bin main.Experiment [--key=values ...] [--runs=N] [--format=csv|json] [--out=path]
+ * [--parallelism=N]
+ */
+public final class Experiment {
+
+    public static final String RUNS = "runs";
+    public static final String FORMAT = "format";
+    public static final String OUT = "out";
+    public static final String PARALLELISM = "parallelism";
+
+    public enum Format {
+        CSV, JSON
+    }
+
+    private static final String[] METRICS = {
+            "seed", "meals", "mealsPerMinute", "coupons", "couponRate", "walkouts", "lateStarts",
+            "p50Millis", "p90Millis", "p99Millis", "revenue", "wallMillis"
+    };
+
+    /**
+     * One simulation: the settings it ran with and what came of it.
+     */
+    public static final class Row {
+        private final Map<String, String> settings;
+        private final long seed;
+        private final Configuration configuration;
+        private Simulation.Result result;
+
+        private Row(Map<String, String> settings, long seed) {
+            this.settings = settings;
+            this.seed = seed;
+            // Built up front so a bad setting fails before anything runs
+            this.configuration = Configuration.fromArgs(args(settings, seed));
+        }
+
+        public Map<String, String> settings() {
+            return settings;
+        }
+
+        public Simulation.Result result() {
+            return result;
+        }
+
+        private Object[] metrics() {
+            Simulation.Result r = result;
+            return new Object[] {
+                    seed, r.mealsServed(), r.mealsPerMinute(), r.couponsIssued(), r.couponRate(), r.walkouts(),
+                    r.deadlineMisses(), r.orderToPlatePercentile(0.50), r.orderToPlatePercentile(0.90),
+                    r.orderToPlatePercentile(0.99), r.revenue(), r.wallMillis()
+            };
+        }
+
+        private static String[] args(Map<String, String> settings, long seed) {
+            List<String> args = new ArrayList<>();
+            settings.forEach((key, value) -> args.add("--" + key + "=" + value));
+            args.add("--" + Configuration.SEED + "=" + seed);
+            return args.toArray(new String[0]);
+        }
+    }
+
+    private final Map<String, List<String>> grid = new LinkedHashMap<>();
+    private int runs = 1;
+    private long firstSeed = 0;
+    private Format format = Format.CSV;
+    private String out;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public static Experiment fromArgs(String[] args) {
+        Experiment experiment = new Experiment();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (!arg.startsWith("--") || split < 0) {
+                throw new IllegalArgumentException("Expected --key=values but got: " + arg);
+            }
+            String key = arg.substring(2, split);
+            String value = arg.substring(split + 1);
+            switch (key) {
+                case RUNS:
+                    experiment.runs = positive(key, value);
+                    break;
+                case PARALLELISM:
+                    experiment.parallelism = positive(key, value);
+                    break;
+                case FORMAT:
+                    experiment.format = Format.valueOf(value.trim().toUpperCase());
+                    break;
+                case OUT:
+                    experiment.out = value;
+                    break;
+                case Configuration.SEED:
+                    experiment.firstSeed = Long.parseLong(value.trim());
+                    break;
+                default:
+                    if (!Simulation.SETTINGS.contains(key)) {
+                        throw new IllegalArgumentException(
+                                String.format("The simulation does not model --%s, so it cannot be swept", key));
+                    }
+                    experiment.grid.put(key, alternatives(key, value));
+            }
+        }
+        return experiment;
+    }
+
+    private static int positive(String key, String value) {
+        int number = Integer.parseInt(value.trim());
+        if (number <= 0) {
+            throw new IllegalArgumentException(String.format("%s must be positive but was: %s", key, value));
+        }
+        return number;
+    }
+
+    // Comma-separated values and from..to ranges
+    private static List<String> alternatives(String key, String values) {
+        List<String> alternatives = new ArrayList<>();
+        for (String value : values.split(",")) {
+            value = value.trim();
+            int range = value.indexOf("..");
+            if (range < 0) {
+                alternatives.add(value);
+                continue;
+            }
+            long from = Long.parseLong(value.substring(0, range).trim());
+            long to = Long.parseLong(value.substring(range + 2).trim());
+            if (from > to) {
+                throw new IllegalArgumentException(String.format("Empty range for %s: %s", key, value));
+            }
+            for (long i = from; i <= to; i++) {
+                alternatives.add(Long.toString(i));
+            }
+        }
+        return alternatives;
+    }
+
+    /**
+     * Every point of the grid, each once per seed, in a stable order.
+     */
+    public List<Row> plan() {
+        List<Map<String, String>> points = new ArrayList<>();
+        points.add(new LinkedHashMap<>());
+        for (Map.Entry<String, List<String>> setting : grid.entrySet()) {
+            List<Map<String, String>> expanded = new ArrayList<>();
+            for (Map<String, String> point : points) {
+                for (String value : setting.getValue()) {
+                    Map<String, String> next = new LinkedHashMap<>(point);
+                    next.put(setting.getKey(), value);
+                    expanded.add(next);
+                }
+            }
+            points = expanded;
+        }
+        List<Row> rows = new ArrayList<>();
+        for (Map<String, String> point : points) {
+            for (int run = 0; run < runs; run++) {
+                rows.add(new Row(point, firstSeed + run));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Runs every row of the plan on a fork-join pool and returns them with their results.
+     */
+    public List<Row> run() {
+        List<Row> rows = plan();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new Sweep(rows, 0, rows.size()));
+        } finally {
+            pool.shutdown();
+        }
+        return rows;
+    }
+
+    // Splits the rows in halves until each task runs a single simulation
+    private static final class Sweep extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Row> rows;
+        private final int from;
+        private final int to;
+
+        Sweep(List<Row> rows, int from, int to) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                Row row = rows.get(from);
+                row.result = new Simulation(row.configuration).run();
+            } else if (to > from) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Sweep(rows, from, middle), new Sweep(rows, middle, to));
+            }
+        }
+    }
+
+    public void write(List<Row> rows, PrintStream out) {
+        List<String> keys = new ArrayList<>(grid.keySet());
+        if (format == Format.CSV) {
+            List<String> header = new ArrayList<>(keys);
+            header.addAll(List.of(METRICS));
+            out.println(String.join(",", header));
+            for (Row row : rows) {
+                StringBuilder line = new StringBuilder();
+                for (String key : keys) {
+                    line.append(csv(row.settings.get(key))).append(',');
+                }
+                Object[] metrics = row.metrics();
+                for (int i = 0; i < metrics.length; i++) {
+                    line.append(i == 0 ? "" : ",").append(number(metrics[i]));
+                }
+                out.println(line);
+            }
+            return;
+        }
+        out.println("[");
+        for (int r = 0; r < rows.size(); r++) {
+            Row row = rows.get(r);
+            StringBuilder object = new StringBuilder("  {");
+            for (String key : keys) {
+                object.append(json(key)).append(": ").append(json(row.settings.get(key))).append(", ");
+            }
+            Object[] metrics = row.metrics();
+            for (int i = 0; i < metrics.length; i++) {
+                object.append(i == 0 ? "" : ", ").append(json(METRICS[i])).append(": ").append(number(metrics[i]));
+            }
+            out.println(object.append(r == rows.size() - 1 ? "}" : "},"));
+        }
+        out.println("]");
+    }
+
+    private static String number(Object value) {
+        return value instanceof Double ? String.format(java.util.Locale.ROOT, "%.4f", (Double) value) : value.toString();
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String json(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    public static void main(String[] args) {
+        Experiment experiment = fromArgs(args);
+        long start = System.nanoTime();
+        List<Row> rows = experiment.run();
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        if (experiment.out == null) {
+            experiment.write(rows, System.out);
+        } else {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(Paths.get(experiment.out)), false,
+                    StandardCharsets.UTF_8)) {
+                experiment.write(rows, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write results to " + experiment.out, e);
+            }
+        }
+        System.err.println(String.format("Ran %d simulations in %d ms on %d threads.", rows.size(), elapsed,
+                experiment.parallelism));
+    }
+}
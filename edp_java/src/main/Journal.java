@@ -0,0 +1,281 @@
+package main;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Append-only record of what happened to money, orders, seats and chopsticks, kept so a run can
+ * be replayed after the process is gone. Unlike the {@link EventLog}, which is for people to read
+ * and can be turned down, the journal records every business event as a fixed-size binary record
+ * that {@link JournalReader} turns back into balances and statistics.
+ *
+ * Actors fill pre-allocated ring slots exactly like the event log; one writer thread packs them
+ * into a direct buffer and appends it to the current segment file through a FileChannel. Every
+ * COMMIT_INTERVAL one force to disk covers all the records written since the previous one (group
+ * commit), so a crash loses at most that much and the cost of a force is shared by the batch.
+ *
+ * Settings: --journal=directory (off when absent). Segments are named journal-NNNNNN.bin and
+ * roll over at SEGMENT_SIZE bytes.
+ */
+public final class Journal {
+
+    /**
+     * Every journalled event. The philosopher is the one the event concerns; the subject is the
+     * seat, waiter or cook involved; amounts are in cents.
+     */
+    public enum Type {
+        // amount: budget brought in
+        ARRIVED,
+        // subject: seat
+        SEATED,
+        // subject: waiter; meal
+        ORDER_TAKEN,
+        // subject: waiter; meal
+        ORDER_PLACED,
+        // subject: waiter; amount: coupon value
+        COUPON_ISSUED,
+        // subject: cook; meal
+        COOKED,
+        // subject: waiter; meal
+        DELIVERED,
+        // subject: seat
+        CHOPSTICKS_TAKEN,
+        // subject: seat
+        CHOPSTICKS_PUT_DOWN,
+        // meal; amount: price charged; balance: money left
+        PAID,
+        // subject: seat
+        VACATED,
+        // balance: money left
+        LEFT
+    }
+
+    // Segment header: magic, format version, record size
+    static final int MAGIC = 0x4544504A; // "EDPJ"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 12;
+    // time (8), type (1), unused (1), meal (2), philosopher (4), subject (4), unused (4), amount (8), balance (8)
+    static final int RECORD_SIZE = 40;
+    static final long SEGMENT_SIZE = 64L << 20;
+    static final long COMMIT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(10);
+    // How long the writer sleeps once caught up. Each wake-up costs a context switch, so it waits
+    // long enough to pick up a batch; the ring holds over half a second of events at 100k a second.
+    static final long IDLE_PARK = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // One reusable record per ring slot
+    private static final class Slot {
+        private volatile long published = -1;
+        private Type type;
+        private long time;
+        private int meal;
+        private int philosopher;
+        private int subject;
+        private long amount;
+        private long balance;
+    }
+
+    private static final int CAPACITY = 1 << 16;
+    private static final int MASK = CAPACITY - 1;
+
+    private static final boolean ENABLED;
+    private static final Slot[] RING;
+    private static final AtomicLong CLAIMED = new AtomicLong();
+    private static volatile long written = 0;
+    private static volatile boolean closing = false;
+    private static final Thread WRITER;
+    // Record times are nanoseconds since the journal opened
+    private static final long OPENED = System.nanoTime();
+
+    static {
+        String directory = Configuration.current().journal();
+        ENABLED = directory != null;
+        if (!ENABLED) {
+            RING = null;
+            WRITER = null;
+        } else {
+            RING = new Slot[CAPACITY];
+            java.util.Arrays.setAll(RING, i -> new Slot());
+            SegmentWriter segments = new SegmentWriter(Paths.get(directory));
+            WRITER = new Thread(() -> drain(segments), "Journal writer");
+            WRITER.setDaemon(true);
+            WRITER.start();
+        }
+    }
+
+    private Journal() {
+        // Prevent instantiation
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public static void record(Type type, int philosopher, int subject) {
+        record(type, philosopher, subject, -1, 0, 0);
+    }
+
+    public static void record(Type type, int philosopher, int subject, int meal) {
+        record(type, philosopher, subject, meal, 0, 0);
+    }
+
+    public static void record(Type type, int philosopher, int subject, int meal, long amount, long balance) {
+        if (!ENABLED) {
+            return;
+        }
+        long sequence = CLAIMED.getAndIncrement();
+        // Only waits if the writer has fallen a whole ring behind
+        while (sequence - written >= CAPACITY) {
+            Thread.yield();
+        }
+        Slot slot = RING[(int) (sequence & MASK)];
+        slot.type = type;
+        slot.time = System.nanoTime() - OPENED;
+        slot.meal = meal;
+        slot.philosopher = philosopher;
+        slot.subject = subject;
+        slot.amount = amount;
+        slot.balance = balance;
+        slot.published = sequence;
+    }
+
+    /**
+     * Writes and forces everything recorded so far, then stops the writer. Later events are dropped.
+     */
+    public static void close() {
+        if (WRITER == null) {
+            return;
+        }
+        closing = true;
+        LockSupport.unpark(WRITER);
+        try {
+            WRITER.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void drain(SegmentWriter segments) {
+        long next = 0;
+        long lastCommit = System.nanoTime();
+        try {
+            while (true) {
+                Slot slot = RING[(int) (next & MASK)];
+                if (slot.published == next) {
+                    segments.append(slot);
+                    written = ++next;
+                    if (System.nanoTime() - lastCommit >= COMMIT_INTERVAL) {
+                        segments.commit();
+                        lastCommit = System.nanoTime();
+                    }
+                } else if (closing && next >= CLAIMED.get()) {
+                    break;
+                } else {
+                    // Caught up: commit if the interval is up, but never force more often than that
+                    if (segments.hasUncommitted() && System.nanoTime() - lastCommit >= COMMIT_INTERVAL) {
+                        segments.commit();
+                        lastCommit = System.nanoTime();
+                    }
+                    LockSupport.parkNanos(IDLE_PARK);
+                }
+            }
+            segments.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the journal.", e);
+        }
+    }
+
+    static Path segment(Path directory, int number) {
+        return directory.resolve(String.format("journal-%06d.bin", number));
+    }
+
+    private static final class SegmentWriter {
+        private final Path directory;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE * 1024);
+        private FileChannel channel;
+        private int number = 0;
+        // Bytes in the current segment, written or still buffered
+        private long size;
+        private boolean uncommitted = false;
+
+        SegmentWriter(Path directory) {
+            this.directory = directory;
+            try {
+                Files.createDirectories(directory);
+                // Philosopher numbers restart with every run, so runs cannot share a journal
+                if (Files.exists(segment(directory, 0))) {
+                    throw new IllegalArgumentException("There is already a journal in " + directory);
+                }
+                open();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open journal in " + directory, e);
+            }
+        }
+
+        private void open() throws IOException {
+            channel = FileChannel.open(segment(directory, number), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE);
+            size = HEADER_SIZE;
+        }
+
+        void append(Slot slot) throws IOException {
+            if (size + RECORD_SIZE > SEGMENT_SIZE) {
+                roll();
+            }
+            if (buffer.remaining() < RECORD_SIZE) {
+                write();
+            }
+            buffer.putLong(slot.time)
+                    .put((byte) slot.type.ordinal())
+                    .put((byte) 0)
+                    .putShort((short) slot.meal)
+                    .putInt(slot.philosopher)
+                    .putInt(slot.subject)
+                    .putInt(0)
+                    .putLong(slot.amount)
+                    .putLong(slot.balance);
+            size += RECORD_SIZE;
+            uncommitted = true;
+        }
+
+        boolean hasUncommitted() {
+            return uncommitted;
+        }
+
+        // Group commit: one force covers every record appended since the last
+        void commit() throws IOException {
+            write();
+            channel.force(false);
+            uncommitted = false;
+        }
+
+        private void write() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void roll() throws IOException {
+            commit();
+            channel.close();
+            number++;
+            open();
+        }
+
+        void close() throws IOException {
+            commit();
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Replays a {@link Journal} to rebuild what the run left behind: every philosopher's balance,
+ * revenue and coupons handed out, and service statistics. Balances are recomputed from arrivals,
+ * payments and coupons alone, and checked against the balances the philosophers recorded.
+ *
+ * Usage: java -cp bin main.JournalReader directory
+ */
+public final class JournalReader {
+
+    public static final class Replay {
+        private long records = 0;
+        private final long[] counts = new long[Journal.Type.values().length];
+        // Indexed by philosopher number; balances in cents
+        private long[] balances = new long[64];
+        private long[] orderTakenAt = new long[64];
+        private int philosophers = 0;
+        private long revenue = 0;
+        private long coupons = 0;
+        private long mismatches = 0;
+        private int seated = 0;
+        private int mostSeated = 0;
+        private int heldChopsticks = 0;
+        private int mostHeldChopsticks = 0;
+        private long lastTime = 0;
+        private long tornBytes = 0;
+        private final LatencyHistogram orderToPlate = new LatencyHistogram();
+
+        private void apply(Journal.Type type, long time, int philosopher, long amount, long balance) {
+            records++;
+            counts[type.ordinal()]++;
+            lastTime = Math.max(lastTime, time);
+            ensure(philosopher);
+            switch (type) {
+                case ARRIVED:
+                    balances[philosopher] = amount;
+                    break;
+                case SEATED:
+                    mostSeated = Math.max(mostSeated, ++seated);
+                    break;
+                case VACATED:
+                    seated--;
+                    break;
+                case CHOPSTICKS_TAKEN:
+                    heldChopsticks += 2;
+                    mostHeldChopsticks = Math.max(mostHeldChopsticks, heldChopsticks);
+                    break;
+                case CHOPSTICKS_PUT_DOWN:
+                    heldChopsticks -= 2;
+                    break;
+                case ORDER_TAKEN:
+                    orderTakenAt[philosopher] = time;
+                    break;
+                case DELIVERED:
+                    orderToPlate.record(time - orderTakenAt[philosopher]);
+                    break;
+                case COUPON_ISSUED:
+                    coupons += amount;
+                    balances[philosopher] += amount;
+                    break;
+                case PAID:
+                    // A philosopher short of the price pays what they have
+                    revenue += Math.min(amount, balances[philosopher]);
+                    balances[philosopher] = Math.max(0, balances[philosopher] - amount);
+                    check(philosopher, balance);
+                    break;
+                case LEFT:
+                    check(philosopher, balance);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // Trusts the recorded balance from here on, so one discrepancy is counted once
+        private void check(int philosopher, long recorded) {
+            if (balances[philosopher] != recorded) {
+                mismatches++;
+                balances[philosopher] = recorded;
+            }
+        }
+
+        private void ensure(int philosopher) {
+            if (philosopher >= balances.length) {
+                int length = Math.max(philosopher + 1, balances.length * 2);
+                balances = Arrays.copyOf(balances, length);
+                orderTakenAt = Arrays.copyOf(orderTakenAt, length);
+            }
+            philosophers = Math.max(philosophers, philosopher + 1);
+        }
+
+        public long records() {
+            return records;
+        }
+
+        public long count(Journal.Type type) {
+            return counts[type.ordinal()];
+        }
+
+        public int philosophers() {
+            return philosophers;
+        }
+
+        // Balance in cents the philosopher was left with
+        public long balance(int philosopher) {
+            return philosopher < philosophers ? balances[philosopher] : 0;
+        }
+
+        public long revenueCents() {
+            return revenue;
+        }
+
+        public long couponCents() {
+            return coupons;
+        }
+
+        // Recorded balances that disagreed with the replayed ones
+        public long mismatches() {
+            return mismatches;
+        }
+
+        // Bytes of a record cut short at the end of the journal, as a crash mid-write leaves
+        public long tornBytes() {
+            return tornBytes;
+        }
+
+        public LatencyHistogram orderToPlate() {
+            return orderToPlate;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder();
+            report.append(String.format("%,d records over %.1f s from %,d philosophers%n", records, lastTime / 1e9,
+                    philosophers));
+            for (Journal.Type type : Journal.Type.values()) {
+                report.append(String.format("  %-20s %,d%n", type, count(type)));
+            }
+            long balance = 0;
+            for (int philosopher = 0; philosopher < philosophers; philosopher++) {
+                balance += balances[philosopher];
+            }
+            report.append(String.format("Revenue $%.2f, coupons $%.2f, philosophers left holding $%.2f%n",
+                    revenue / 100.0, coupons / 100.0, balance / 100.0));
+            report.append(String.format("At most %d seats taken and %d chopsticks held%n", mostSeated,
+                    mostHeldChopsticks));
+            report.append(String.format("Order to plate p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                    orderToPlate.percentile(0.50) / 1e6, orderToPlate.percentile(0.99) / 1e6,
+                    orderToPlate.max() / 1e6));
+            report.append(String.format("%d balance mismatches, %d torn bytes", mismatches, tornBytes));
+            return report.toString();
+        }
+    }
+
+    private JournalReader() {
+        // Prevent instantiation
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java -cp bin main.JournalReader directory");
+            System.exit(2);
+        }
+        System.out.println(replay(Paths.get(args[0])));
+    }
+
+    /**
+     * Reads every segment in order and replays its records.
+     */
+    public static Replay replay(Path directory) throws IOException {
+        Replay replay = new Replay();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Journal.RECORD_SIZE * 4096);
+        Journal.Type[] types = Journal.Type.values();
+        for (int number = 0; Files.exists(Journal.segment(directory, number)); number++) {
+            Path segment = Journal.segment(directory, number);
+            try (FileChannel channel = FileChannel.open(segment)) {
+                buffer.clear();
+                readHeader(segment, channel, buffer);
+                while (channel.read(buffer) >= 0 || buffer.position() > 0) {
+                    buffer.flip();
+                    if (buffer.remaining() < Journal.RECORD_SIZE && channel.position() == channel.size()) {
+                        replay.tornBytes += buffer.remaining();
+                        break;
+                    }
+                    while (buffer.remaining() >= Journal.RECORD_SIZE) {
+                        long time = buffer.getLong();
+                        Journal.Type type = types[buffer.get()];
+                        buffer.get();
+                        buffer.getShort();
+                        int philosopher = buffer.getInt();
+                        buffer.getInt();
+                        buffer.getInt();
+                        long amount = buffer.getLong();
+                        long balance = buffer.getLong();
+                        replay.apply(type, time, philosopher, amount, balance);
+                    }
+                    buffer.compact();
+                }
+            }
+        }
+        return replay;
+    }
+
+    private static void readHeader(Path segment, FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.limit(Journal.HEADER_SIZE);
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // Keep reading until the header is in
+        }
+        buffer.flip();
+        if (buffer.remaining() < Journal.HEADER_SIZE || buffer.getInt() != Journal.MAGIC
+                || buffer.getInt() != Journal.VERSION || buffer.getInt() != Journal.RECORD_SIZE) {
+            throw new IllegalArgumentException("Not a journal segment: " + segment);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,165 @@
+package main;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Orders waiting for a cook, handed out in the order the scheduling policy picks. Deadlines and
+ * cooking times are read through the given functions and compared on the given clock, so the
+ * simulation can schedule its diners the same way the cooks schedule orders.
+ *
+ * Under shortest-job-first an order whose deadline is within the starvation slack goes first
+ * whatever its length, so long meals cannot be put off indefinitely. The queue is unbounded;
+ * admission control keeps it short.
+ */
+public final class KitchenQueue<T> {
+
+    public enum Scheduling {
+        // First come, first served
+        FIFO,
+        // Earliest deadline first
+        EDF,
+        // Shortest cooking time first, with deadline-based starvation protection
+        SJF
+    }
+
+    private final Scheduling scheduling;
+    private final ToLongFunction<T> deadline;
+    private final long slack;
+    private final LongSupplier clock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    // FIFO uses the deque alone; EDF the deadline heap alone; SJF both heaps
+    private final ArrayDeque<T> arrivals;
+    private final PriorityQueue<T> byDeadline;
+    private final PriorityQueue<T> byLength;
+    private long promotions = 0;
+
+    /**
+     * @param slack how close to its deadline an order may get before it jumps the shortest-job queue
+     */
+    public KitchenQueue(Scheduling scheduling, ToLongFunction<T> deadline, ToLongFunction<T> cookingTime,
+            long slack, LongSupplier clock) {
+        this.scheduling = scheduling;
+        this.deadline = deadline;
+        this.slack = slack;
+        this.clock = clock;
+        Comparator<T> earliest = Comparator.comparingLong(deadline);
+        this.arrivals = scheduling == Scheduling.FIFO ? new ArrayDeque<>() : null;
+        this.byDeadline = scheduling == Scheduling.FIFO ? null : new PriorityQueue<>(earliest);
+        this.byLength = scheduling == Scheduling.SJF
+                ? new PriorityQueue<>(Comparator.comparingLong(cookingTime).thenComparing(earliest))
+                : null;
+    }
+
+    public Scheduling scheduling() {
+        return scheduling;
+    }
+
+    public void put(T order) {
+        lock.lock();
+        try {
+            if (arrivals != null) {
+                arrivals.add(order);
+            } else {
+                byDeadline.add(order);
+                if (byLength != null) {
+                    byLength.add(order);
+                }
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (isEmpty()) {
+                notEmpty.await();
+            }
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Next order by the policy, or null if none are waiting
+    public T poll() {
+        lock.lock();
+        try {
+            return isEmpty() ? null : next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves up to max orders, in scheduling order, into the collection without waiting.
+     */
+    public int drainTo(Collection<? super T> orders, int max) {
+        lock.lock();
+        try {
+            int drained = 0;
+            while (drained < max && !isEmpty()) {
+                orders.add(next());
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return arrivals != null ? arrivals.size() : byDeadline.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Orders that jumped the shortest-job queue to meet their deadline
+    public long promotions() {
+        lock.lock();
+        try {
+            return promotions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isEmpty() {
+        return arrivals != null ? arrivals.isEmpty() : byDeadline.isEmpty();
+    }
+
+    // Caller holds the lock and has checked the queue is not empty
+    private T next() {
+        if (arrivals != null) {
+            return arrivals.poll();
+        }
+        if (byLength == null) {
+            return byDeadline.poll();
+        }
+        T urgent = byDeadline.peek();
+        if (clock.getAsLong() >= deadline.applyAsLong(urgent) - slack) {
+            if (urgent != byLength.peek()) {
+                promotions++;
+            }
+            byDeadline.poll();
+            byLength.remove(urgent);
+            return urgent;
+        }
+        T shortest = byLength.poll();
+        byDeadline.remove(shortest);
+        return shortest;
+    }
+}
@@ -0,0 +1,274 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The restaurant's books: every philosopher's wallet and the running totals of money brought in,
+ * revenue taken and coupons handed out. Amounts are whole cents in longs, so no transaction ever
+ * rounds.
+ *
+ * A wallet is one atomic balance, debited and credited with a compare-and-set from any thread.
+ * The totals are kept in stripes, each on its own cache line, so threads posting at the same
+ * time add to different stripes instead of fighting over one counter. A transaction claims a
+ * stripe by making its version odd, moves the wallet and adds to the stripe's totals, and makes
+ * the version even again; a thread that finds its stripe claimed moves on to the next instead of
+ * waiting. Because the wallet moves while the stripe is claimed, a snapshot that sees no version
+ * change across two passes over the stripes saw every total, and every wallet, at one instant.
+ */
+public final class Ledger {
+
+    // Longs per stripe: a version and the totals, padded to 64 bytes
+    private static final int STRIDE = 8;
+    private static final int VERSION = 0;
+    private static final int DEPOSITS = 1;
+    private static final int REVENUE = 2;
+    private static final int COUPONS = 3;
+    private static final int ACCOUNTS = 4;
+    private static final int PAYMENTS = 5;
+    private static final int COUPONS_ISSUED = 6;
+
+    static final int STRIPES = MpmcRing.capacityFor(4 * Runtime.getRuntime().availableProcessors());
+    // Optimistic double-collects a snapshot tries before holding the stripes still for one pass
+    static final int SNAPSHOT_ATTEMPTS = 8;
+
+    // A leading stripe's worth of padding keeps stripe 0 off the array header's cache line
+    private static final AtomicLongArray STRIPE_DATA = new AtomicLongArray((STRIPES + 1) * STRIDE);
+
+    /**
+     * One philosopher's money.
+     */
+    public static final class Account {
+        private final AtomicLong balance = new AtomicLong();
+
+        private Account() {
+        }
+
+        public long balance() {
+            return balance.get();
+        }
+
+        // Takes up to the amount, never leaving the balance below zero, and returns what it took
+        private long take(long cents) {
+            long current;
+            long taken;
+            do {
+                current = balance.get();
+                taken = Math.min(cents, current);
+            } while (!balance.compareAndSet(current, current - taken));
+            return taken;
+        }
+    }
+
+    /**
+     * Totals read at one instant. Money is conserved: what philosophers brought in plus coupons
+     * handed out is either revenue or still in their wallets.
+     */
+    public static final class Snapshot {
+        private final long deposits;
+        private final long revenue;
+        private final long coupons;
+        private final long accounts;
+        private final long payments;
+        private final long couponsIssued;
+
+        private Snapshot(long[] totals) {
+            this.deposits = totals[DEPOSITS];
+            this.revenue = totals[REVENUE];
+            this.coupons = totals[COUPONS];
+            this.accounts = totals[ACCOUNTS];
+            this.payments = totals[PAYMENTS];
+            this.couponsIssued = totals[COUPONS_ISSUED];
+        }
+
+        // Cents philosophers brought with them
+        public long depositCents() {
+            return deposits;
+        }
+
+        public long revenueCents() {
+            return revenue;
+        }
+
+        // Cents of credit the restaurant has handed out in coupons
+        public long couponCents() {
+            return coupons;
+        }
+
+        // Cents still in philosophers' wallets
+        public long outstandingCents() {
+            return deposits + coupons - revenue;
+        }
+
+        public long accounts() {
+            return accounts;
+        }
+
+        public long payments() {
+            return payments;
+        }
+
+        public long couponsIssued() {
+            return couponsIssued;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d wallets opened with $%.2f, %,d payments for $%.2f revenue, "
+                    + "%,d coupons worth $%.2f, $%.2f still in wallets", accounts, deposits / 100.0, payments,
+                    revenue / 100.0, couponsIssued, coupons / 100.0, outstandingCents() / 100.0);
+        }
+    }
+
+    private Ledger() {
+        // Prevent instantiation
+    }
+
+    public static long cents(double dollars) {
+        return Math.round(dollars * 100);
+    }
+
+    /**
+     * Opens a wallet holding what the philosopher brought in.
+     */
+    public static Account open(long cents) {
+        if (cents < 0) {
+            throw new IllegalArgumentException("Opening balance cannot be negative.");
+        }
+        Account account = new Account();
+        int base = claim();
+        account.balance.set(cents);
+        post(base, DEPOSITS, cents);
+        post(base, ACCOUNTS, 1);
+        release(base);
+        return account;
+    }
+
+    /**
+     * Charges up to the price, as much as the wallet holds, and books it as revenue. Returns the
+     * cents actually taken.
+     */
+    public static long pay(Account account, long cents) {
+        int base = claim();
+        long taken = account.take(cents);
+        post(base, REVENUE, taken);
+        post(base, PAYMENTS, 1);
+        release(base);
+        return taken;
+    }
+
+    /**
+     * Credits a coupon to the wallet and books it as coupon credit handed out. Returns the new
+     * balance.
+     */
+    public static long issueCoupon(Account account, long cents) {
+        int base = claim();
+        long balance = account.balance.addAndGet(cents);
+        post(base, COUPONS, cents);
+        post(base, COUPONS_ISSUED, 1);
+        release(base);
+        return balance;
+    }
+
+    /**
+     * The totals at one instant. Readers retry while transactions land between their passes and,
+     * if writers keep winning, briefly hold every stripe for one final pass.
+     */
+    public static Snapshot snapshot() {
+        long[] totals = new long[STRIDE];
+        long[] versions = new long[STRIPES];
+        for (int attempt = 0; attempt < SNAPSHOT_ATTEMPTS; attempt++) {
+            if (collect(totals, versions) && unchanged(versions)) {
+                return new Snapshot(totals);
+            }
+            Thread.onSpinWait();
+        }
+        // Claiming in stripe order cannot deadlock: a transaction never waits while it holds one
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            int base = base(stripe);
+            while (!tryClaim(base)) {
+                Thread.onSpinWait();
+            }
+        }
+        try {
+            java.util.Arrays.fill(totals, 0);
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                add(totals, base(stripe));
+            }
+            return new Snapshot(totals);
+        } finally {
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                release(base(stripe));
+            }
+        }
+    }
+
+    // Sums the stripes, noting their versions; false if any was mid-transaction
+    private static boolean collect(long[] totals, long[] versions) {
+        java.util.Arrays.fill(totals, 0);
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            int base = base(stripe);
+            long version = STRIPE_DATA.get(base + VERSION);
+            if ((version & 1) != 0) {
+                return false;
+            }
+            versions[stripe] = version;
+            add(totals, base);
+        }
+        return true;
+    }
+
+    private static boolean unchanged(long[] versions) {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            if (STRIPE_DATA.get(base(stripe) + VERSION) != versions[stripe]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void add(long[] totals, int base) {
+        for (int field = DEPOSITS; field <= COUPONS_ISSUED; field++) {
+            totals[field] += STRIPE_DATA.get(base + field);
+        }
+    }
+
+    // Claims the calling thread's stripe, or the next free one after it
+    private static int claim() {
+        int stripe = stripeOf(Thread.currentThread());
+        while (true) {
+            int base = base(stripe);
+            if (tryClaim(base)) {
+                return base;
+            }
+            stripe = (stripe + 1) & (STRIPES - 1);
+            Thread.onSpinWait();
+        }
+    }
+
+    private static boolean tryClaim(int base) {
+        long version = STRIPE_DATA.get(base + VERSION);
+        return (version & 1) == 0 && STRIPE_DATA.compareAndSet(base + VERSION, version, version + 1);
+    }
+
+    // Only the claiming thread writes a claimed stripe, so no compare-and-set is needed; the release
+    // store keeps a reader that sees the new total from missing the odd version before it
+    private static void post(int base, int field, long amount) {
+        STRIPE_DATA.setRelease(base + field, STRIPE_DATA.getPlain(base + field) + amount);
+    }
+
+    // The release store publishes the stripe's totals together with the new version
+    private static void release(int base) {
+        STRIPE_DATA.setRelease(base + VERSION, STRIPE_DATA.getPlain(base + VERSION) + 1);
+    }
+
+    private static int base(int stripe) {
+        return (stripe + 1) * STRIDE;
+    }
+
+    private static int stripeOf(Thread thread) {
+        long id = thread.getId();
+        // Spread sequential thread ids over the stripes
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (STRIPES - 1);
+    }
+}
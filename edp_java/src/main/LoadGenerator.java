@@ -0,0 +1,82 @@
+package main;
+
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lets philosophers into the threaded restaurant on the schedule of an {@link ArrivalProcess}.
+ * One generator thread sleeps until each arrival is due and hands the new philosopher to the
+ * actor executor, whose threads are reused as earlier philosophers leave, so arrivals never wait
+ * on thread creation or on each other. How late each philosopher got in is recorded, so a
+ * generator that cannot keep up shows as lag instead of a quietly lower offered load.
+ */
+public final class LoadGenerator implements Runnable {
+
+    private final ArrivalProcess process;
+    private final Executor actors;
+    private final long duration;
+    private final Random random;
+    private volatile long opened = 0;
+    private volatile boolean finished = false;
+
+    /**
+     * @param duration milliseconds after which no more philosophers are let in
+     */
+    public LoadGenerator(ArrivalProcess process, Executor actors, long duration, long seed) {
+        this.process = process;
+        this.actors = actors;
+        this.duration = duration;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public void run() {
+        opened = System.nanoTime();
+        try {
+            long arrival;
+            while ((arrival = process.next(random)) >= 0 && arrival <= duration) {
+                long due = opened + TimeUnit.MILLISECONDS.toNanos(arrival);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                }
+                Metrics.recordSince(Metrics.Latency.ARRIVAL_LAG, due);
+                Metrics.increment(Metrics.Count.ARRIVALS);
+                actors.execute(new Philosopher(Name.philosopher((int) (process.arrivals() - 1)),
+                        process.budget(), process.thinkTime()));
+            }
+        } finally {
+            finished = true;
+        }
+    }
+
+    // Whether the process has run dry or the duration is up, so no one else will arrive
+    public boolean isFinished() {
+        return finished;
+    }
+
+    // Milliseconds since the first arrival could have come in
+    public long elapsed() {
+        return opened == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - opened);
+    }
+
+    /**
+     * Offered load against what the restaurant achieved: arrivals the process asked for, arrivals
+     * let in, and arrivals who got a seat at least once, per minute since opening.
+     */
+    public String report() {
+        long elapsed = Math.max(1, Math.min(elapsed(), duration));
+        double minutes = elapsed / 60_000.0;
+        LatencyHistogram lag = Metrics.histogram(Metrics.Latency.ARRIVAL_LAG);
+        return String.format("%s over %.1f minutes: %.1f/min offered, %.1f/min let in, %.1f/min seated, "
+                + "lag p99 %.1f ms max %.1f ms",
+                process.kind().name().toLowerCase(), minutes, process.offered(elapsed) / minutes,
+                Metrics.count(Metrics.Count.ARRIVALS) / minutes, Metrics.count(Metrics.Count.FIRST_SEATINGS) / minutes,
+                lag.percentile(0.99) / 1e6, lag.max() / 1e6);
+    }
+}
@@ -0,0 +1,287 @@
+package main;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Restaurant-wide instrumentation: striped counters and latency histograms recorded by the actors
+ * as they work, readable at any time without stopping them. Published over JMX as
+ * {@value #OBJECT_NAME} once {@link #registerMBean()} has run.
+ */
+public final class Metrics {
+
+    public static final String OBJECT_NAME = "main:type=RestaurantMetrics";
+
+    public enum Count {
+        SEATINGS, SEAT_REFUSALS, WAITER_CALLS, WALKOUTS, ORDERS_TAKEN, ORDERS_PLACED, COUPONS_ISSUED,
+        MEALS_PREPARED, MEALS_ON_COUNTER, MEALS_DELIVERED, MEALS_EATEN, CHOPSTICK_RETRIES,
+        DEADLINE_MISSES, ARRIVALS, FIRST_SEATINGS, DEADLOCKS, STARVATIONS
+    }
+
+    public enum Latency {
+        // Philosopher looking for a seat until seated
+        SEAT_WAIT,
+        // Philosopher calling for a waiter until the order is taken
+        WAITER_WAIT,
+        // Order taken until a cook starts on it
+        ORDER_TO_COOK,
+        // A cook's time at the stove for one order, batch or station dish
+        COOK_TIME,
+        // Order taken until its meal, every dish of it, is on the counter
+        KITCHEN_TIME,
+        // Meal placed on the counter until a waiter serves it
+        DELIVERY,
+        // How late cooks started orders that missed their deadline
+        DEADLINE_LATENESS,
+        // Philosopher reaching for chopsticks until holding both
+        CHOPSTICK_ACQUISITION,
+        // Order taken until served, the latency philosophers notice
+        ORDER_TO_PLATE,
+        // How far behind schedule the load generator let a philosopher in
+        ARRIVAL_LAG
+    }
+
+    public interface RestaurantMetricsMXBean {
+        Map<String, Long> getCounts();
+
+        // Latency percentiles in milliseconds, keyed like "DELIVERY.p99"
+        Map<String, Double> getLatencies();
+
+        Map<String, Long> getMealsPreparedByCook();
+
+        Map<String, Long> getMealsServedByWaiter();
+
+        // Active philosophers, occupied seats and held chopsticks, all read at the same instant
+        Map<String, Integer> getStatus();
+
+        // Money brought in, revenue, coupon credit and money still in wallets, in cents at one instant
+        Map<String, Long> getLedger();
+
+        // Throughput and starvation figures of the chopstick strategy in use
+        Map<String, Double> getChopsticks();
+
+        // Workers busy, orders queued and in flight, and throughput and wait times of each stage of the
+        // reactive pipeline, empty under the other engines
+        Map<String, Double> getPipeline();
+
+        // Admission limit, queue length, measured cook throughput, cooks on break and scheduling figures, and the
+        // utilization and queue length of each station when the kitchen has them
+        Map<String, Double> getKitchen();
+    }
+
+    private static final Map<Count, LongAdder> COUNTS = new EnumMap<>(Count.class);
+    private static final Map<Latency, LatencyHistogram> LATENCIES = new EnumMap<>(Latency.class);
+    static {
+        for (Count count : Count.values()) {
+            COUNTS.put(count, new LongAdder());
+        }
+        for (Latency latency : Latency.values()) {
+            LATENCIES.put(latency, new LatencyHistogram());
+        }
+    }
+
+    private Metrics() {
+        // Prevent instantiation
+    }
+
+    public static void increment(Count count) {
+        COUNTS.get(count).increment();
+    }
+
+    public static void add(Count count, long amount) {
+        COUNTS.get(count).add(amount);
+    }
+
+    public static long count(Count count) {
+        return COUNTS.get(count).sum();
+    }
+
+    // Records the time since startNanos, a System.nanoTime() reading
+    public static void recordSince(Latency latency, long startNanos) {
+        LATENCIES.get(latency).record(System.nanoTime() - startNanos);
+    }
+
+    public static LatencyHistogram histogram(Latency latency) {
+        return LATENCIES.get(latency);
+    }
+
+    public static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new RestaurantMetrics(),
+                    new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register restaurant metrics with JMX.", e);
+        }
+    }
+
+    /**
+     * One line per latency with a sample count, p50, p99 and max in milliseconds.
+     */
+    public static String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (Latency latency : Latency.values()) {
+            LatencyHistogram histogram = LATENCIES.get(latency);
+            summary.append(String.format("%n  %-22s n=%-7d p50 %9.1f ms  p99 %9.1f ms  max %9.1f ms", latency,
+                    histogram.count(), millis(histogram.percentile(0.50)), millis(histogram.percentile(0.99)),
+                    millis(histogram.max())));
+        }
+        return summary.toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static final class RestaurantMetrics implements RestaurantMetricsMXBean {
+        @Override
+        public Map<String, Long> getCounts() {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            COUNTS.forEach((count, adder) -> counts.put(count.name(), adder.sum()));
+            return counts;
+        }
+
+        @Override
+        public Map<String, Double> getLatencies() {
+            Map<String, Double> latencies = new LinkedHashMap<>();
+            LATENCIES.forEach((latency, histogram) -> {
+                latencies.put(latency + ".count", (double) histogram.count());
+                latencies.put(latency + ".mean", millis((long) histogram.mean()));
+                latencies.put(latency + ".p50", millis(histogram.percentile(0.50)));
+                latencies.put(latency + ".p99", millis(histogram.percentile(0.99)));
+                latencies.put(latency + ".max", millis(histogram.max()));
+            });
+            return latencies;
+        }
+
+        @Override
+        public Map<String, Long> getMealsPreparedByCook() {
+            Map<String, Long> meals = new LinkedHashMap<>();
+            for (Cook cook : Cook.list()) {
+                meals.put(cook.name(), (long) cook.mealsPrepared());
+            }
+            return meals;
+        }
+
+        @Override
+        public Map<String, Long> getMealsServedByWaiter() {
+            Map<String, Long> meals = new LinkedHashMap<>();
+            for (Waiter waiter : Waiter.list()) {
+                meals.put(waiter.name(), (long) waiter.mealsServed());
+            }
+            return meals;
+        }
+
+        @Override
+        public Map<String, Integer> getStatus() {
+            RestaurantStatus.Snapshot status = RestaurantStatus.snapshot();
+            Map<String, Integer> figures = new LinkedHashMap<>();
+            figures.put("activePhilosophers", status.activePhilosophers());
+            figures.put("occupiedSeats", status.occupiedSeats());
+            figures.put("heldChopsticks", status.heldChopsticks());
+            return figures;
+        }
+
+        @Override
+        public Map<String, Long> getLedger() {
+            Ledger.Snapshot ledger = Ledger.snapshot();
+            Map<String, Long> figures = new LinkedHashMap<>();
+            figures.put("depositCents", ledger.depositCents());
+            figures.put("revenueCents", ledger.revenueCents());
+            figures.put("couponCents", ledger.couponCents());
+            figures.put("outstandingCents", ledger.outstandingCents());
+            figures.put("payments", ledger.payments());
+            figures.put("couponsIssued", ledger.couponsIssued());
+            return figures;
+        }
+
+        @Override
+        public Map<String, Double> getChopsticks() {
+            // Summed over the tables, except fairness and starvation, which report the worst table
+            double eatsPerSecond = 0;
+            double fairness = 1;
+            long retries = 0;
+            long leastMeals = Long.MAX_VALUE;
+            int waitingSeats = 0;
+            long longestWait = 0;
+            for (Table table : Restaurant.current().tables()) {
+                ChopstickArbiter chopsticks = table.chopsticks();
+                eatsPerSecond += chopsticks.eatsPerSecond();
+                fairness = Math.min(fairness, chopsticks.fairness());
+                retries += chopsticks.retries();
+                leastMeals = Math.min(leastMeals, chopsticks.leastMeals());
+                waitingSeats += chopsticks.waitingSeats();
+                longestWait = Math.max(longestWait, chopsticks.acquisitions().max());
+            }
+            Map<String, Double> figures = new LinkedHashMap<>();
+            figures.put("eatsPerSecond", eatsPerSecond);
+            figures.put("fairness", fairness);
+            figures.put("retries", (double) retries);
+            figures.put("leastMeals", (double) leastMeals);
+            figures.put("waitingSeats", (double) waitingSeats);
+            figures.put("longestWait", millis(longestWait));
+            return figures;
+        }
+
+        @Override
+        public Map<String, Double> getPipeline() {
+            Map<String, Double> figures = new LinkedHashMap<>();
+            Pipeline pipeline = Pipeline.current();
+            if (pipeline == null) {
+                return figures;
+            }
+            figures.put("inFlight", (double) pipeline.inFlight());
+            for (Pipeline.Stage stage : pipeline.stages()) {
+                String prefix = stage.name() + ".";
+                figures.put(prefix + "busy", (double) stage.busy());
+                figures.put(prefix + "queued", (double) stage.queued());
+                figures.put(prefix + "received", (double) stage.received());
+                figures.put(prefix + "passedOn", (double) stage.passedOn());
+                figures.put(prefix + "turnedAway", (double) stage.turnedAway());
+                figures.put(prefix + "waitP99", millis(stage.queueWait().percentile(0.99)));
+                figures.put(prefix + "workP50", millis(stage.service().percentile(0.50)));
+            }
+            return figures;
+        }
+
+        @Override
+        public Map<String, Double> getKitchen() {
+            Map<String, Double> figures = new LinkedHashMap<>();
+            figures.put("admitted", (double) Cook.ADMISSION.admitted());
+            figures.put("admissionLimit", (double) Cook.ADMISSION.limit());
+            figures.put("predictedWaitMillis", Cook.ADMISSION.predictedWait());
+            figures.put("mealsPerMinute", Cook.ADMISSION.ratePerMinute());
+            figures.put("availableCooks", (double) Cook.ADMISSION.availableCooks());
+            long queued = Cook.ORDER_QUEUE.size();
+            long promotions = Cook.ORDER_QUEUE.promotions();
+            for (Station station : Station.list()) {
+                queued += station.queue().size();
+                promotions += station.queue().promotions();
+            }
+            figures.put("queued", (double) queued);
+            figures.put("deadlineMisses", (double) Cook.ADMISSION.deadlineMisses());
+            figures.put("starvationPromotions", (double) promotions);
+            long onBreak = Cook.breaks().onBreak();
+            long deferrals = Cook.breaks().deferrals();
+            for (Station station : Station.list()) {
+                onBreak += station.breaks().onBreak();
+                deferrals += station.breaks().deferrals();
+            }
+            figures.put("cooksOnBreak", (double) onBreak);
+            figures.put("breakDeferrals", (double) deferrals);
+            for (Station station : Station.list()) {
+                String prefix = station.type().name().toLowerCase();
+                figures.put(prefix + ".utilization", station.utilization());
+                figures.put(prefix + ".queued", (double) station.queue().size());
+                figures.put(prefix + ".dishes", (double) station.dishes());
+            }
+            return figures;
+        }
+    }
+}
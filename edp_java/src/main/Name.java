@@ -20,6 +20,25 @@ public class Name {
             new Name("Isaac")
     };
 
+    // Larger tables reuse the names above with a running number, e.g. "Zhaozhou 2"
+    public static String philosopher(int index) {
+        return generated(PHILOSOPHER_NAMES, index);
+    }
+
+    public static String cook(int index) {
+        return generated(COOK_NAMES, index);
+    }
+
+    public static String waiter(int index) {
+        return generated(WAITER_NAMES, index);
+    }
+
+    private static String generated(Name[] names, int index) {
+        String base = names[index % names.length].value;
+        int round = index / names.length;
+        return round == 0 ? base : base + " " + (round + 1);
+    }
+
     private final String value;
 
     public Name(String value) {
@@ -1,37 +1,113 @@
 package main;
 
+/**
+ * A philosopher's order. The meal is a small id into precomputed menu tables, so creating, pricing
+ * and logging an order allocates nothing; orders are recycled through a pool once the meal is paid
+ * for or replaced by a coupon.
+ */
 public class Order {
-    private final Philosopher philosopher;
-    private final Food[] meal;
-    private final float cost;
+    // Every entree, soup and dessert combination: id = (entree * soups + soup) * desserts + dessert
+    private static final int SOUPS = Food.soups.length;
+    private static final int DESSERTS = Food.desserts.length;
+    static final int MEALS = Food.entrees.length * SOUPS * DESSERTS;
+    private static final Food[][] MEAL_FOODS = new Food[MEALS][];
+    private static final String[] MEAL_STRINGS = new String[MEALS];
+    // Prices in whole cents, as the ledger charges them
+    private static final long[] MEAL_CENTS = new long[MEALS];
+    private static final long[] MEAL_COOKING_TIMES = new long[MEALS];
+    static {
+        for (int id = 0; id < MEALS; id++) {
+            Food[] meal = {
+                    Food.entrees[id / (SOUPS * DESSERTS)],
+                    Food.soups[id / DESSERTS % SOUPS],
+                    Food.desserts[id % DESSERTS]
+            };
+            MEAL_FOODS[id] = meal;
+            MEAL_STRINGS[id] = describe(meal);
+            MEAL_CENTS[id] = centsOf(meal);
+            for (Food food : meal) {
+                MEAL_COOKING_TIMES[id] += food.prepTime();
+            }
+        }
+    }
+
+    // Enough spare orders for every philosopher to have one out at a time
+    private static final MpmcRing<Order> POOL = new MpmcRing<>(
+            MpmcRing.capacityFor(Math.min(Configuration.current().philosophers(), 1 << 16)));
+
+    private volatile Philosopher philosopher;
+    private int meal;
+    private long timeOrdered;
+    private long deadline;
+    private volatile long timeCooked;
+    private long timeServed;
+    private volatile boolean served = false;
+    // Counter lane of the waiter who took the order
+    private int lane = 0;
+    // Dishes still at the kitchen stations; the cook who finishes the last one plates the meal
+    private final java.util.concurrent.atomic.AtomicInteger dishesLeft = new java.util.concurrent.atomic.AtomicInteger();
 
     public Order(Philosopher philosopher) {
+        reset(philosopher);
+    }
+
+    /**
+     * A pooled order with a random meal, or a new one if the pool is empty.
+     */
+    public static Order obtain(Philosopher philosopher) {
+        Order order = POOL.poll();
+        if (order == null) {
+            return new Order(philosopher);
+        }
+        order.reset(philosopher);
+        return order;
+    }
+
+    /**
+     * Returns the order to the pool. Nothing may use it afterwards; the event log copies what it
+     * needs when an event is logged, so logged orders can be recycled straight away.
+     */
+    public void recycle() {
+        philosopher = null;
+        POOL.offer(this);
+    }
+
+    private void reset(Philosopher philosopher) {
         this.philosopher = philosopher;
-        this.meal = Food.randomMeal();
-        this.cost = calculateCost();
+        this.meal = Food.randomMealId(java.util.concurrent.ThreadLocalRandom.current());
+        this.timeOrdered = System.nanoTime();
+        // Patience for a waiter and then the same again for a cook to start, from the first call
+        long calledAt = philosopher.calledAt();
+        this.deadline = (calledAt == 0 ? timeOrdered : calledAt)
+                + java.util.concurrent.TimeUnit.MILLISECONDS.toNanos(2 * Philosopher.TIMEOUT);
+        this.timeCooked = 0;
+        this.timeServed = 0;
+        this.served = false;
+        this.lane = 0;
     }
 
-    private float calculateCost() {
-        float total = 0;
+    static long centsOf(Food[] meal) {
+        long total = 0;
         for (Food food : meal)
-            total += food.price();
+            total += Ledger.cents(food.price());
         return total;
     }
 
-    public Philosopher philosopher() {
-        return philosopher;
+    static long centsOf(int meal) {
+        return MEAL_CENTS[meal];
     }
 
-    public float cost() {
-        return cost;
+    // Milliseconds a cook needs for the meal on its own
+    static long cookingTimeOf(int meal) {
+        return MEAL_COOKING_TIMES[meal];
     }
 
-    public Food[] meal() {
-        return meal;
+    static int entreeOf(int meal) {
+        return meal / (SOUPS * DESSERTS);
     }
 
-    public String mealString() {
-        return java.util.Arrays.stream(meal())
+    private static String describe(Food[] meal) {
+        return java.util.Arrays.stream(meal)
                 .filter(f -> !(f.type() == Food.Type.SOUP && f.name().equals("No Soup")))
                 .filter(f -> !(f.type() == Food.Type.DESSERT && f.name().equals("No Dessert")))
                 .map(Food::toString)
@@ -39,6 +115,105 @@ public class Order {
                 .orElse("");
     }
 
+    public static String mealString(int meal) {
+        return MEAL_STRINGS[meal];
+    }
+
+    public int lane() {
+        return lane;
+    }
+
+    public void assignLane(int lane) {
+        this.lane = lane;
+    }
+
+    public Philosopher philosopher() {
+        return philosopher;
+    }
+
+    public long costCents() {
+        return MEAL_CENTS[meal];
+    }
+
+    // System.nanoTime() when the waiter took the order
+    public long timeOrdered() {
+        return timeOrdered;
+    }
+
+    // System.nanoTime() by which a cook should start on the order
+    public long deadline() {
+        return deadline;
+    }
+
+    public long cookingTime() {
+        return MEAL_COOKING_TIMES[meal];
+    }
+
+    // Milliseconds a station needs for the meal's dish of this type, zero for "No Soup" and the like
+    public long prepTime(Food.Type type) {
+        return MEAL_FOODS[meal][type.ordinal()].prepTime();
+    }
+
+    public Food dish(Food.Type type) {
+        return MEAL_FOODS[meal][type.ordinal()];
+    }
+
+    // Called before the dishes go out to the stations
+    void fork(int dishes) {
+        dishesLeft.set(dishes);
+    }
+
+    /**
+     * Counts a station's dish done and returns true for the last one, whose cook then owns the
+     * order. Any other cook must not touch the order again, as it may already be served.
+     */
+    boolean dishDone() {
+        return dishesLeft.decrementAndGet() == 0;
+    }
+
+    public void markCooked() {
+        timeCooked = System.nanoTime();
+    }
+
+    public long timeCooked() {
+        return timeCooked;
+    }
+
+    public void markServed() {
+        timeServed = System.nanoTime();
+        served = true;
+    }
+
+    public boolean isServed() {
+        return served;
+    }
+
+    // Nanoseconds from the waiter taking the order to the meal reaching the table
+    public long orderToPlateNanos() {
+        return isServed() ? timeServed - timeOrdered : -1;
+    }
+
+    public int mealId() {
+        return meal;
+    }
+
+    public Food entree() {
+        return MEAL_FOODS[meal][0];
+    }
+
+    // Index of the entree on the menu
+    public int entreeId() {
+        return entreeOf(meal);
+    }
+
+    public Food[] meal() {
+        return MEAL_FOODS[meal].clone();
+    }
+
+    public String mealString() {
+        return MEAL_STRINGS[meal];
+    }
+
     public static class Food {
         public enum Type {
             ENTREE, SOUP, DESSERT
@@ -47,14 +222,17 @@ public class Order {
         private final Type type;
         private final Name name;
         private final float price;
+        // Estimated stove time in milliseconds
+        private final long prepTime;
         private static final java.util.Random rand = new java.util.Random();
 
-        public Food(Type type, String name, float price) {
+        public Food(Type type, String name, float price, long prepTime) {
             this.type = type;
             this.name = new Name(name);
             if (price < 0)
                 throw new IllegalArgumentException("Food price cannot be negative.");
             this.price = price;
+            this.prepTime = prepTime;
         }
 
         public String name() {
@@ -65,6 +243,10 @@ public class Order {
             return price;
         }
 
+        public long prepTime() {
+            return prepTime;
+        }
+
         public Type type() {
             return type;
         }
@@ -75,20 +257,20 @@ public class Order {
         }
 
         private static final Food[] entrees = new Food[] {
-                new Food(Type.ENTREE, "Paella", 13.25f),
-                new Food(Type.ENTREE, "Wu Hsiang Chi", 10.00f),
-                new Food(Type.ENTREE, "Bogrács Gulyás", 11.25f),
-                new Food(Type.ENTREE, "Spanakopita", 6.50f),
-                new Food(Type.ENTREE, "Moui Nagden", 12.95f),
-                new Food(Type.ENTREE, "Sambal Goreng Udang", 14.95f)
+                new Food(Type.ENTREE, "Paella", 13.25f, 5500),
+                new Food(Type.ENTREE, "Wu Hsiang Chi", 10.00f, 4500),
+                new Food(Type.ENTREE, "Bogrács Gulyás", 11.25f, 6000),
+                new Food(Type.ENTREE, "Spanakopita", 6.50f, 2750),
+                new Food(Type.ENTREE, "Moui Nagden", 12.95f, 5000),
+                new Food(Type.ENTREE, "Sambal Goreng Udang", 14.95f, 5000)
         };
         private static final Food[] soups = new Food[] {
-                new Food(Type.SOUP, "No Soup", 0.00f),
-                new Food(Type.SOUP, "Albóndigas", 3.00f)
+                new Food(Type.SOUP, "No Soup", 0.00f, 0),
+                new Food(Type.SOUP, "Albóndigas", 3.00f, 1500)
         };
         private static final Food[] desserts = new Food[] {
-                new Food(Type.DESSERT, "No Dessert", 0.00f),
-                new Food(Type.DESSERT, "Berog", 3.50f)
+                new Food(Type.DESSERT, "No Dessert", 0.00f, 0),
+                new Food(Type.DESSERT, "Berog", 3.50f, 1000)
         };
 
         public static Food[] menu() {
@@ -104,6 +286,15 @@ public class Order {
         }
 
         public static Food[] randomMeal() {
+            return randomMeal(rand);
+        }
+
+        public static int randomMealId(java.util.Random rand) {
+            return (rand.nextInt(entrees.length) * soups.length + rand.nextInt(soups.length)) * desserts.length
+                    + rand.nextInt(desserts.length);
+        }
+
+        public static Food[] randomMeal(java.util.Random rand) {
             return new Food[] {
                     entrees[rand.nextInt(entrees.length)],
                     soups[rand.nextInt(soups.length)],
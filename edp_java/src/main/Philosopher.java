@@ -2,129 +2,203 @@ package main;
 
 import java.util.Optional;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
-public class Philosopher extends Thread {
+public class Philosopher implements Runnable {
 
     // Constants (Time in milliseconds)
-    private static final long THINKING_TIME = 1000;
-    private static final long EATING_TIME = 2500;
-    private static final long WAITING_TIME = 100;
-    private static final long TIMEOUT = 2500;
-    private static final float STARTING_MONEY = 200.0f;
-    private static final float COUPON_VALUE = 5.0f;
+    static final long THINKING_TIME = 1000;
+    static final long EATING_TIME = 2500;
+    static final long TIMEOUT = 2500;
+    static final float STARTING_MONEY = 200.0f;
+    static final long COUPON_CENTS = 500;
 
-    private static final Philosopher[] PHILOSOPHERS = java.util.Arrays.stream(Name.PHILOSOPHER_NAMES)
-            .map(n -> new Philosopher(n.toString())).toArray(Philosopher[]::new);
+    // Philosophers are numbered in the order they are created, which is also the order of their names
+    private static final java.util.concurrent.atomic.AtomicInteger NEXT_NUMBER = new java.util.concurrent.atomic.AtomicInteger();
 
-    // Track which chopsticks are currently being held
-    private static final java.util.Set<Integer> heldChopsticks = java.util.concurrent.ConcurrentHashMap.newKeySet();
+    private static final Philosopher[] PHILOSOPHERS;
+    static {
+        Configuration configuration = Configuration.current();
+        // An open restaurant has no fixed population; its philosophers come from the arrival process
+        int population = configuration.arrivals() == ArrivalProcess.Kind.CLOSED ? configuration.philosophers() : 0;
+        Philosopher[] philosophers = new Philosopher[population];
+        java.util.Arrays.setAll(philosophers,
+                i -> new Philosopher(Name.philosopher(i), configuration.budget(), configuration.thinkTime()));
+        PHILOSOPHERS = philosophers;
+    }
 
     public static Philosopher[] list() {
         return PHILOSOPHERS;
     }
 
-    public static java.util.Set<Integer> getHeldChopsticks() {
-        return new java.util.HashSet<>(heldChopsticks);
+    private enum CallState {
+        IDLE, CALLING, ANSWERED, GAVE_UP
     }
 
     private final Name name;
-    private float money = STARTING_MONEY;
-    private Optional<Seat> seat = Optional.empty();
-    private Optional<Order> order = Optional.empty();
-    private CountDownLatch foodServedLatch;
+    private final int number;
+    private final Ledger.Account wallet;
+    private final long thinkTime;
+    // Null when not seated; the waiter who hands out a coupon may vacate it too, so it is taken atomically
+    private final AtomicReference<Seat> seat = new AtomicReference<>();
+    // The table of the latest seat, where this philosopher's calls and meals are handled
+    private volatile Table table;
+    private volatile Order order;
+    // Whoever moves the call out of CALLING first, waiter or timeout, decides its outcome
+    private final AtomicReference<CallState> callState = new AtomicReference<>(CallState.IDLE);
+    // System.nanoTime() of the latest call for a waiter, or 0 before the first
+    private volatile long calledAt = 0;
+    private volatile CountDownLatch orderTakenLatch;
+    private volatile CountDownLatch foodServedLatch;
     private volatile boolean shouldReceiveCoupon = false;
+    private volatile boolean hasLeft = false;
+    // System.nanoTime() of the first seat search since last seated, or 0 when not searching
+    private long seatSearchStart = 0;
+    private boolean seatedBefore = false;
 
     public Name name() {
         return name;
     }
 
     public Philosopher(String name) {
+        this(name, STARTING_MONEY, THINKING_TIME);
+    }
+
+    public Philosopher(String name, float budget, long thinkTime) {
         this.name = new Name(name);
+        this.number = NEXT_NUMBER.getAndIncrement();
+        this.wallet = Ledger.open(Ledger.cents(budget));
+        this.thinkTime = thinkTime;
         Utility.validateTime(TIMEOUT);
+        Utility.validateTime(thinkTime);
+        // Active from the moment they exist, so a closed population counts before its threads start
+        RestaurantStatus.philosopherArrived();
+    }
+
+    // Identifies the philosopher in the journal
+    public int number() {
+        return number;
+    }
+
+    public long calledAt() {
+        return calledAt;
+    }
+
+    public Table table() {
+        Table current = table;
+        return current != null ? current : Restaurant.current().table(0);
+    }
+
+    public boolean hasLeft() {
+        return hasLeft;
     }
 
     public Optional<Order> order() {
-        return order;
+        return Optional.ofNullable(order);
+    }
+
+    /**
+     * Claims this philosopher's call for a waiter. Returns false if the philosopher has already
+     * given up, in which case the waiter must not take an order.
+     */
+    public boolean answerCall() {
+        return callState.compareAndSet(CallState.CALLING, CallState.ANSWERED);
     }
 
     public void setOrder(Order order) {
-        this.order = Optional.of(order);
+        this.order = order;
+        CountDownLatch latch = orderTakenLatch;
+        if (latch != null)
+            latch.countDown();
     }
 
     public void clearOrder() {
-        this.order = Optional.empty();
+        this.order = null;
     }
 
     private void think() {
         try {
-            Thread.sleep(THINKING_TIME);
+            Thread.sleep(thinkTime);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
     }
 
     private void eat() {
-        int seatNumber = seat.get().number();
-        int leftChopstick = seatNumber;
-        int rightChopstick = (seatNumber + 1) % PHILOSOPHERS.length;
-
-        int firstChopstick;
-        int secondChopstick;
-        // Last philosopher picks up right chopstick first, then left
-        if (seatNumber == PHILOSOPHERS.length - 1) {
-            firstChopstick = rightChopstick;
-            secondChopstick = leftChopstick;
-        } else {
-            firstChopstick = leftChopstick;
-            secondChopstick = rightChopstick;
-        }
-
-        synchronized (EnhancedDiningPhilosophers.CHOPSTICKS[firstChopstick]) {
-            heldChopsticks.add(firstChopstick);
-            synchronized (EnhancedDiningPhilosophers.CHOPSTICKS[secondChopstick]) {
-                heldChopsticks.add(secondChopstick);
-                Utility.waitFor(EATING_TIME);
-                heldChopsticks.remove(secondChopstick);
-            }
-            heldChopsticks.remove(firstChopstick);
+        // Chopsticks belong to the table, numbered by position around it
+        Seat current = seat.get();
+        ChopstickArbiter chopsticks = current.table().chopsticks();
+        chopsticks.pickUp(current.index());
+        StallDetector.ate(this);
+        Journal.record(Journal.Type.CHOPSTICKS_TAKEN, number, current.number());
+        Metrics.increment(Metrics.Count.MEALS_EATEN);
+        try {
+            Utility.waitFor(EATING_TIME);
+        } finally {
+            Journal.record(Journal.Type.CHOPSTICKS_PUT_DOWN, number, current.number());
+            chopsticks.putDown(current.index());
         }
     }
 
     private void pay() {
-        float mealCost = order.get().cost();
-        money -= mealCost;
-        if (money < 0) {
-            System.out.println(String.format(
-                    "Philosopher %s cannot afford the meal ($%.2f) and is leaving for good. Balance: $%.2f",
-                    name, mealCost, money));
-            money = 0;
+        long price = order.costCents();
+        long paid = Ledger.pay(wallet, price);
+        long balance = wallet.balance();
+        if (paid < price) {
+            EventLog.log(EventLog.Type.PHILOSOPHER_CANNOT_AFFORD, name, price / 100.0, (paid - price) / 100.0);
         } else {
-            System.out.println(
-                    String.format("Philosopher %s has paid $%.2f and left the restaurant.", name, mealCost));
+            EventLog.log(EventLog.Type.PHILOSOPHER_PAID, name, price / 100.0, balance / 100.0);
         }
+        Journal.record(Journal.Type.PAID, number, -1, order.mealId(), price, balance);
         vacateSeat();
     }
 
-    private boolean waitForWaiter() {
-        System.out.println(String.format("Philosopher %s is waiting for a waiter.", name));
+    void callWaiter() {
+        shouldReceiveCoupon = false;
+        // Arm the latches first: a waiter may take the order, or hand out a coupon, straight away
+        orderTakenLatch = new CountDownLatch(1);
+        foodServedLatch = new CountDownLatch(1);
+        calledAt = System.nanoTime();
+        callState.set(CallState.CALLING);
+        // Add to the calling queue of the table's waiters
+        table().addPhilosopherToQueue(this);
+    }
 
-        // Add to the blocking queue
-        Waiter.addPhilosopherToQueue(this);
+    private boolean waitForWaiter() {
+        EventLog.log(EventLog.Type.PHILOSOPHER_WAITING_FOR_WAITER, name);
+        callWaiter();
 
         // Wait for a waiter to take the order within TIMEOUT
-        long startTime = System.currentTimeMillis();
-        while (System.currentTimeMillis() - startTime <= TIMEOUT) {
-            // Check if we have an order (meaning a waiter took our order)
-            if (order.isPresent()) {
-                System.out.println(String.format("Philosopher %s got an order from waiter.", name));
-                return true;
+        Metrics.increment(Metrics.Count.WAITER_CALLS);
+        long called = System.nanoTime();
+        boolean orderTaken = false;
+        try {
+            orderTaken = orderTakenLatch.await(TIMEOUT, TimeUnit.MILLISECONDS);
+            if (!orderTaken && !callState.compareAndSet(CallState.CALLING, CallState.GAVE_UP)) {
+                // A waiter answered just as we ran out of patience; it is already writing the order
+                orderTakenLatch.await();
+                orderTaken = true;
             }
-            Utility.waitFor(WAITING_TIME);
+        } catch (InterruptedException e) {
+            // The restaurant is closing: leave even if a waiter is still writing the order, which
+            // then stays with the staff and is never served
+            Thread.currentThread().interrupt();
+            callState.compareAndSet(CallState.CALLING, CallState.GAVE_UP);
+            table().removePhilosopherFromQueue(this);
+            return false;
         }
 
-        // Timeout reached - remove from queue if still there
-        Waiter.removePhilosopherFromQueue(this);
-        System.out.println(String.format("Philosopher %s gave up waiting for a waiter.", name));
+        if (orderTaken) {
+            Metrics.recordSince(Metrics.Latency.WAITER_WAIT, called);
+            EventLog.log(EventLog.Type.PHILOSOPHER_GOT_ORDER, name);
+            return true;
+        }
+
+        // Gave up - no waiter can take the order now, so removal from the queue is just cleanup
+        table().removePhilosopherFromQueue(this);
+        Metrics.increment(Metrics.Count.WALKOUTS);
+        EventLog.log(EventLog.Type.PHILOSOPHER_GAVE_UP, name);
         return false;
     }
 
@@ -137,60 +211,92 @@ public class Philosopher extends Thread {
         this.shouldReceiveCoupon = shouldReceive;
     }
 
-    private void giveCoupon(float amount) {
-        money += amount;
-        System.out.println(String.format("Philosopher %s received a $%.2f coupon. New balance: $%.2f", name,
-                amount, money));
+    // Debited by this philosopher's payments, credited by the waiter who hands out a coupon
+    public Ledger.Account wallet() {
+        return wallet;
     }
 
     @Override
     public void run() {
-        while (money > 0) {
-            attemptToDine();
-            think();
+        Journal.record(Journal.Type.ARRIVED, number, -1, -1, wallet.balance(), 0);
+        StallDetector.arrived(this);
+        try {
+            while (wallet.balance() > 0 && !Thread.currentThread().isInterrupted()) {
+                attemptToDine();
+                think();
+            }
+            EventLog.log(EventLog.Type.PHILOSOPHER_LEFT_FOR_GOOD, name);
+        } finally {
+            Journal.record(Journal.Type.LEFT, number, -1, -1, 0, wallet.balance());
+            StallDetector.left(this);
+            hasLeft = true;
+            RestaurantStatus.philosopherLeft();
         }
-        System.out.println(String.format("Philosopher %s has left the restaurant for good.", name));
     }
 
     private void attemptToDine() {
-        seat = Optional.ofNullable(Seat.availableSeat());
-        if (seat.isPresent() && seat.get().attemptToOccupy()) {
-            System.out.println(
-                    String.format("Philosopher %s is being seated in chair %d.", name, seat.get().number()));
+        if (seatSearchStart == 0) {
+            seatSearchStart = System.nanoTime();
+        }
+        Seat claimed = Seat.claimAvailableSeat();
+        seat.set(claimed);
+        if (claimed != null) {
+            table = claimed.table();
+            Metrics.recordSince(Metrics.Latency.SEAT_WAIT, seatSearchStart);
+            Metrics.increment(Metrics.Count.SEATINGS);
+            if (!seatedBefore) {
+                seatedBefore = true;
+                Metrics.increment(Metrics.Count.FIRST_SEATINGS);
+            }
+            seatSearchStart = 0;
+            EventLog.log(EventLog.Type.PHILOSOPHER_SEATED, name, claimed.number());
+            Journal.record(Journal.Type.SEATED, number, claimed.number());
+            StallDetector.seated(this, claimed.number());
             think();
-            System.out.println(String.format("Philosopher %s is about to call for a waiter.", name));
+            EventLog.log(EventLog.Type.PHILOSOPHER_CALLING_WAITER, name);
             boolean hasWaiter = waitForWaiter();
             if (!hasWaiter) {
-                System.out.println(
-                        String.format("Philosopher %s has left the restaurant without being served.", name));
-                seat.get().vacate();
+                EventLog.log(EventLog.Type.PHILOSOPHER_LEFT_UNSERVED, name);
+                vacateSeat();
                 return;
             }
-            System.out.println(String.format("Philosopher %s got waiter, waiting for food.", name));
-            shouldReceiveCoupon = false;
-            foodServedLatch = new CountDownLatch(1);
+            EventLog.log(EventLog.Type.PHILOSOPHER_WAITING_FOR_FOOD, name);
             try {
                 foodServedLatch.await();
             } catch (InterruptedException e) {
+                // Closing before the meal came: a cook or waiter may still hold the order, so leave
+                // it to them and go without eating, paying or recycling it
                 Thread.currentThread().interrupt();
+                clearOrder();
+                EventLog.log(EventLog.Type.PHILOSOPHER_LEFT_UNSERVED, name);
+                vacateSeat();
+                return;
             }
             if (shouldReceiveCoupon) {
-                giveCoupon(COUPON_VALUE);
+                // The waiter has already credited the coupon
+                EventLog.log(EventLog.Type.PHILOSOPHER_COUPON, name, COUPON_CENTS / 100.0, wallet.balance() / 100.0);
                 return; // Leave without eating
             }
-            System.out.println(String.format("Philosopher %s got food, about to eat.", name));
+            EventLog.log(EventLog.Type.PHILOSOPHER_ABOUT_TO_EAT, name);
             eat();
             pay();
+            // Nobody else holds the order once it is paid for
+            Order paid = order;
             clearOrder();
+            paid.recycle();
         } else {
-            System.out.println(String.format("Philosopher %s could not get a seat.", name));
+            Metrics.increment(Metrics.Count.SEAT_REFUSALS);
+            EventLog.log(EventLog.Type.PHILOSOPHER_NO_SEAT, name);
         }
     }
 
     public void vacateSeat() {
-        if (seat.isPresent()) {
-            seat.get().vacate();
-            seat = Optional.empty(); // Clear the seat reference so philosopher can get a new seat
+        // Clearing the reference lets the philosopher get a new seat, and makes this the only vacate
+        Seat current = seat.getAndSet(null);
+        if (current != null) {
+            Journal.record(Journal.Type.VACATED, number, current.number());
+            StallDetector.vacated(this, current.number());
+            current.vacate();
         }
     }
 }
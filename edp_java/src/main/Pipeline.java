@@ -0,0 +1,567 @@
+package main;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * The order lifecycle as a chain of {@link Flow} stages: philosophers calling for a waiter are
+ * published to the waiters, who place orders with the cooks, whose meals go over the counter and
+ * back to the tables. A stage asks upstream for only as many orders as it has free workers and
+ * buffer for, so a busy kitchen holds callers back at the source instead of piling orders up in
+ * memory. Every wait is a task on one small scheduled pool rather than a sleeping thread, so tens
+ * of thousands of orders can be in flight on a handful of threads.
+ *
+ * Timings, admission control and payment follow the threaded restaurant. Seats, chopsticks and
+ * coffee breaks are left out: each philosopher eats at a place of their own, and waiters taking
+ * orders and waiters serving meals are separate pools of the configured size.
+ */
+public final class Pipeline {
+
+    // The pipeline now running, for the metrics MXBean
+    private static volatile Pipeline current;
+
+    public static Pipeline current() {
+        return current;
+    }
+
+    public static final class Result {
+        private final long elapsedMillis;
+        private final long mealsServed;
+        private final long couponsIssued;
+        private final long walkouts;
+        private final double revenue;
+        private final long deadlineMisses;
+        private final long peakInFlight;
+        private final LatencyHistogram orderToPlate;
+        private final String stages;
+
+        private Result(long elapsedMillis, long mealsServed, long couponsIssued, long walkouts, double revenue,
+                long deadlineMisses, long peakInFlight, LatencyHistogram orderToPlate, String stages) {
+            this.elapsedMillis = elapsedMillis;
+            this.mealsServed = mealsServed;
+            this.couponsIssued = couponsIssued;
+            this.walkouts = walkouts;
+            this.revenue = revenue;
+            this.deadlineMisses = deadlineMisses;
+            this.peakInFlight = peakInFlight;
+            this.orderToPlate = orderToPlate;
+            this.stages = stages;
+        }
+
+        public long mealsServed() {
+            return mealsServed;
+        }
+
+        public long couponsIssued() {
+            return couponsIssued;
+        }
+
+        public long walkouts() {
+            return walkouts;
+        }
+
+        public double revenue() {
+            return revenue;
+        }
+
+        // Most philosophers between calling for a waiter and being served at any one time
+        public long peakInFlight() {
+            return peakInFlight;
+        }
+
+        public double mealsPerMinute() {
+            return elapsedMillis == 0 ? 0 : mealsServed * 60_000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Ran %.1f minutes on %d threads: %d meals served (%.1f/min), %d coupons, "
+                    + "%d walkouts, $%.2f revenue, %d late starts, %,d orders in flight at peak, order-to-plate "
+                    + "p50 %.0f ms, p99 %.0f ms%s", elapsedMillis / 60_000.0, THREADS, mealsServed, mealsPerMinute(),
+                    couponsIssued, walkouts, revenue, deadlineMisses, peakInFlight,
+                    millis(orderToPlate.percentile(0.50)), millis(orderToPlate.percentile(0.99)), stages);
+        }
+    }
+
+    private static final class Diner {
+        private final Ledger.Account wallet;
+        private final long thinkTime;
+        private int meal;
+        // System.nanoTime() readings along the way
+        private long calledAt;
+        private long timeOrdered;
+        private long timeCooked;
+        private long enteredStage;
+
+        private Diner(float budget, long thinkTime) {
+            this.wallet = Ledger.open(Ledger.cents(budget));
+            this.thinkTime = thinkTime;
+        }
+    }
+
+    // Enough to keep every core busy; waits are scheduled, never slept
+    static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private final Configuration configuration;
+    private final ScheduledExecutorService scheduler;
+    private final AdmissionControl admission;
+    private final Diner[] diners;
+    private final CountDownLatch departures;
+
+    private final Calls calls = new Calls();
+    private final Stage waiters;
+    private final Stage kitchen;
+    private final Stage counter;
+    private final Tables tables = new Tables();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LongAdder mealsServed = new LongAdder();
+    private final LongAdder couponsIssued = new LongAdder();
+    private final LongAdder walkouts = new LongAdder();
+    private final LongAdder revenueCents = new LongAdder();
+    private final LatencyHistogram orderToPlate = new LatencyHistogram();
+
+    public Pipeline(Configuration configuration) {
+        this.configuration = configuration;
+        AtomicInteger threads = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(THREADS, task -> {
+            Thread thread = new Thread(task, "Pipeline-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.admission = new AdmissionControl(configuration.admission(), configuration.cookPermits(),
+                configuration.cooks() * configuration.batch() + configuration.orderQueue(), Philosopher.TIMEOUT,
+                configuration.cooks(), 1.0 / Cook.COOKING_TIME);
+        this.diners = new Diner[configuration.philosophers()];
+        java.util.Arrays.setAll(diners, i -> new Diner(configuration.budget(), configuration.thinkTime()));
+        this.departures = new CountDownLatch(diners.length);
+        int waiterCount = configuration.waiters();
+        this.waiters = new Stage("waiters", waiterCount, waiterCount, this::takeOrder);
+        this.kitchen = new Stage("kitchen", configuration.cooks(), configuration.orderQueue(), this::cook);
+        // Room for all the kitchen holds, so finished meals seldom wait at the pass
+        this.counter = new Stage("counter", waiterCount, kitchen.capacity, this::deliver);
+    }
+
+    /**
+     * Opens the restaurant and waits until every philosopher has left or the duration is up.
+     */
+    public Result run() {
+        long start = System.nanoTime();
+        current = this;
+        calls.subscribe(waiters);
+        waiters.subscribe(kitchen);
+        kitchen.subscribe(counter);
+        counter.subscribe(tables);
+        for (Diner diner : diners) {
+            think(diner);
+        }
+        try {
+            departures.await(configuration.duration(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler.shutdownNow();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return new Result(elapsed, mealsServed.sum(), couponsIssued.sum(), walkouts.sum(), revenueCents.sum() / 100.0,
+                admission.deadlineMisses(), peakInFlight.get(), orderToPlate, report());
+    }
+
+    /**
+     * One line per stage, as of now.
+     */
+    public String report() {
+        return String.format("%n  %s%n  %s%n  %s", waiters, kitchen, counter);
+    }
+
+    Stage[] stages() {
+        return new Stage[] { waiters, kitchen, counter };
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    // Philosopher
+
+    private void think(Diner diner) {
+        if (diner.wallet.balance() <= 0) {
+            departures.countDown();
+            return;
+        }
+        after(diner.thinkTime, () -> calls.call(diner));
+    }
+
+    private void giveUp(Diner diner) {
+        Metrics.increment(Metrics.Count.WALKOUTS);
+        walkouts.increment();
+        inFlight.decrementAndGet();
+        think(diner);
+    }
+
+    private void eat(Diner diner) {
+        Metrics.increment(Metrics.Count.MEALS_EATEN);
+        revenueCents.add(Ledger.pay(diner.wallet, Order.centsOf(diner.meal)));
+        think(diner);
+    }
+
+    // Waiter
+
+    private CompletableFuture<Diner> takeOrder(Diner diner) {
+        Metrics.recordSince(Metrics.Latency.WAITER_WAIT, diner.calledAt);
+        Metrics.increment(Metrics.Count.ORDERS_TAKEN);
+        diner.meal = Order.Food.randomMealId(ThreadLocalRandom.current());
+        diner.timeOrdered = System.nanoTime();
+        if (admission.tryAdmit()) {
+            Metrics.increment(Metrics.Count.ORDERS_PLACED);
+            return CompletableFuture.completedFuture(diner);
+        }
+        Metrics.increment(Metrics.Count.COUPONS_ISSUED);
+        couponsIssued.increment();
+        Ledger.issueCoupon(diner.wallet, Philosopher.COUPON_CENTS);
+        inFlight.decrementAndGet();
+        think(diner);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private CompletableFuture<Diner> deliver(Diner diner) {
+        Metrics.recordSince(Metrics.Latency.DELIVERY, diner.timeCooked);
+        Metrics.increment(Metrics.Count.MEALS_DELIVERED);
+        return CompletableFuture.completedFuture(diner);
+    }
+
+    // Cook
+
+    private CompletableFuture<Diner> cook(Diner diner) {
+        Metrics.recordSince(Metrics.Latency.ORDER_TO_COOK, diner.timeOrdered);
+        long now = millis();
+        // Same deadline as a threaded order: patience for a waiter, then again for a cook to start
+        long deadline = TimeUnit.NANOSECONDS.toMillis(diner.calledAt) + 2 * Philosopher.TIMEOUT;
+        if (admission.started(deadline, now)) {
+            Metrics.increment(Metrics.Count.DEADLINE_MISSES);
+        }
+        CompletableFuture<Diner> meal = new CompletableFuture<>();
+        long cookingTime = Order.cookingTimeOf(diner.meal);
+        after(cookingTime, () -> {
+            diner.timeCooked = System.nanoTime();
+            admission.completed(1);
+            admission.recordCycle(1, millis() - now);
+            Metrics.increment(Metrics.Count.MEALS_PREPARED);
+            Metrics.histogram(Metrics.Latency.COOK_TIME).record(TimeUnit.MILLISECONDS.toNanos(cookingTime));
+            Metrics.recordSince(Metrics.Latency.KITCHEN_TIME, diner.timeOrdered);
+            meal.complete(diner);
+        });
+        return meal;
+    }
+
+    private void after(long millis, Runnable task) {
+        scheduler.schedule(task, millis, TimeUnit.MILLISECONDS);
+    }
+
+    private static long millis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    // Adds to a demand counter without overflowing, as the Flow rules allow Long.MAX_VALUE
+    private static void addDemand(AtomicLong demand, long n) {
+        demand.getAndAccumulate(n, (current, more) -> current + more < 0 ? Long.MAX_VALUE : current + more);
+    }
+
+    /**
+     * The source: philosophers calling for a waiter, handed out only as the waiters ask for them.
+     * Callers who ran out of patience before a waiter asked walk out instead.
+     */
+    private final class Calls implements Flow.Publisher<Diner>, Flow.Subscription {
+        private final ConcurrentLinkedQueue<Diner> callers = new ConcurrentLinkedQueue<>();
+        private final AtomicLong demand = new AtomicLong();
+        // Drain passes owed; only the thread that takes it from zero drains
+        private final AtomicInteger work = new AtomicInteger();
+        private volatile Flow.Subscriber<? super Diner> subscriber;
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super Diner> subscriber) {
+            this.subscriber = subscriber;
+            subscriber.onSubscribe(this);
+        }
+
+        void call(Diner diner) {
+            Metrics.increment(Metrics.Count.WAITER_CALLS);
+            diner.calledAt = System.nanoTime();
+            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            callers.add(diner);
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                throw new IllegalArgumentException("Demand must be positive: " + n);
+            }
+            addDemand(demand, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            demand.set(0);
+        }
+
+        private void drain() {
+            if (work.getAndIncrement() != 0) {
+                return;
+            }
+            long patience = TimeUnit.MILLISECONDS.toNanos(Philosopher.TIMEOUT);
+            int missed = 1;
+            do {
+                while (demand.get() > 0) {
+                    Diner diner = callers.poll();
+                    if (diner == null) {
+                        break;
+                    }
+                    if (System.nanoTime() - diner.calledAt > patience) {
+                        giveUp(diner);
+                        continue;
+                    }
+                    demand.decrementAndGet();
+                    subscriber.onNext(diner);
+                }
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+
+    /**
+     * A pool of workers between two points of the lifecycle. It holds at most as many orders as it
+     * has workers plus buffer, counting those still on their way from upstream, and passes finished
+     * ones on only as fast as downstream asks for them. All bookkeeping happens in drain passes that
+     * one thread at a time runs, so signals from any thread are handled in order without locks.
+     */
+    final class Stage implements Flow.Processor<Diner, Diner>, Flow.Subscription {
+        private final String name;
+        private final int workers;
+        private final int capacity;
+        private final Function<Diner, CompletableFuture<Diner>> task;
+        private final ConcurrentLinkedQueue<Diner> arrived = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<Diner> finished = new ConcurrentLinkedQueue<>();
+        // Tasks that ended without an order to pass on, such as one turned away with a coupon
+        private final AtomicInteger dropped = new AtomicInteger();
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private volatile Flow.Subscription upstream;
+        private volatile Flow.Subscriber<? super Diner> downstream;
+        // Only touched in drain passes
+        private final ArrayDeque<Diner> waiting = new ArrayDeque<>();
+        private final ArrayDeque<Diner> outgoing = new ArrayDeque<>();
+        private long requested = 0;
+        private int busy = 0;
+        // Copies for readers outside the drain
+        private volatile int busyNow;
+        private volatile int queuedNow;
+        private final LongAdder received = new LongAdder();
+        private final LongAdder passedOn = new LongAdder();
+        private final LongAdder turnedAway = new LongAdder();
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private final LatencyHistogram service = new LatencyHistogram();
+
+        private Stage(String name, int workers, int buffer, Function<Diner, CompletableFuture<Diner>> task) {
+            this.name = name;
+            this.workers = workers;
+            this.capacity = (int) Math.min(Integer.MAX_VALUE, (long) workers + buffer);
+            this.task = task;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public int workers() {
+            return workers;
+        }
+
+        public int busy() {
+            return busyNow;
+        }
+
+        // Orders waiting for a worker or for downstream to take them
+        public int queued() {
+            return queuedNow;
+        }
+
+        public long received() {
+            return received.sum();
+        }
+
+        public long passedOn() {
+            return passedOn.sum();
+        }
+
+        public long turnedAway() {
+            return turnedAway.sum();
+        }
+
+        public LatencyHistogram queueWait() {
+            return queueWait;
+        }
+
+        public LatencyHistogram service() {
+            return service;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super Diner> subscriber) {
+            this.downstream = subscriber;
+            subscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.upstream = subscription;
+            drain();
+        }
+
+        @Override
+        public void onNext(Diner diner) {
+            diner.enteredStage = System.nanoTime();
+            arrived.add(diner);
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            downstream.onError(error);
+        }
+
+        @Override
+        public void onComplete() {
+            downstream.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                throw new IllegalArgumentException("Demand must be positive: " + n);
+            }
+            addDemand(demand, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            upstream.cancel();
+        }
+
+        private void start(Diner diner) {
+            long started = System.nanoTime();
+            queueWait.record(started - diner.enteredStage);
+            CompletableFuture<Diner> outcome;
+            try {
+                outcome = task.apply(diner);
+            } catch (RuntimeException e) {
+                // A task that throws instead of failing its future still has to free the worker
+                outcome = CompletableFuture.failedFuture(e);
+            }
+            outcome.whenComplete((result, error) -> {
+                service.record(System.nanoTime() - started);
+                if (error != null) {
+                    EventLog.log(EventLog.Type.PIPELINE_FAILED, name, error, null, 0, 0, 0, 0);
+                }
+                if (result != null) {
+                    finished.add(result);
+                } else {
+                    // Nothing to pass on, or the task failed; either way the worker is free
+                    dropped.incrementAndGet();
+                }
+                drain();
+            });
+        }
+
+        private void drain() {
+            if (work.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                for (Diner diner; (diner = arrived.poll()) != null;) {
+                    requested--;
+                    received.increment();
+                    waiting.add(diner);
+                }
+                for (Diner diner; (diner = finished.poll()) != null;) {
+                    busy--;
+                    outgoing.add(diner);
+                }
+                int gone = dropped.getAndSet(0);
+                busy -= gone;
+                turnedAway.add(gone);
+                while (demand.get() > 0 && !outgoing.isEmpty() && downstream != null) {
+                    demand.decrementAndGet();
+                    passedOn.increment();
+                    downstream.onNext(outgoing.poll());
+                }
+                while (busy < workers && !waiting.isEmpty()) {
+                    busy++;
+                    start(waiting.poll());
+                }
+                long room = capacity - (requested + waiting.size() + busy + outgoing.size());
+                if (room > 0 && upstream != null) {
+                    requested += room;
+                    upstream.request(room);
+                }
+                busyNow = busy;
+                queuedNow = waiting.size() + outgoing.size();
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-8s %,d workers, %d busy, %d queued, %,d in, %,d out, %,d turned away, "
+                    + "wait p99 %.1f ms, work p50 %.1f ms", name, workers, busy(), queued(), received(), passedOn(),
+                    turnedAway(), millis(queueWait.percentile(0.99)), millis(service.percentile(0.50)));
+        }
+    }
+
+    /**
+     * The sink: each philosopher eats at a place of their own, so the tables take every meal.
+     */
+    private final class Tables implements Flow.Subscriber<Diner> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(Diner diner) {
+            long latency = System.nanoTime() - diner.timeOrdered;
+            Metrics.histogram(Metrics.Latency.ORDER_TO_PLATE).record(latency);
+            orderToPlate.record(latency);
+            mealsServed.increment();
+            inFlight.decrementAndGet();
+            after(Philosopher.EATING_TIME, () -> eat(diner));
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            EventLog.log(EventLog.Type.PIPELINE_FAILED, "tables", error, null, 0, 0, 0, 0);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
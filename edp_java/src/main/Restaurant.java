@@ -0,0 +1,140 @@
+package main;
+
+/**
+ * The dining room split into tables, each with its own seats, chopsticks and section of waiters,
+ * in front of one shared kitchen. Arriving philosophers are sent to the least loaded table, so
+ * contention on seats, chopsticks and waiter queues grows with the size of a table rather than
+ * of the whole restaurant.
+ *
+ * Seats and chopsticks keep restaurant-wide numbers: table t's seats follow on from table t - 1's.
+ */
+public final class Restaurant {
+
+    private static final Restaurant CURRENT = new Restaurant(Configuration.current());
+
+    public static Restaurant current() {
+        return CURRENT;
+    }
+
+    private final Table[] tables;
+    private final Waiter[] waiters;
+
+    private Restaurant(Configuration configuration) {
+        int count = configuration.tables();
+        tables = new Table[count];
+        waiters = new Waiter[configuration.waiters()];
+        int firstSeat = 0;
+        int firstWaiter = 0;
+        for (int t = 0; t < count; t++) {
+            // Spread the remainders over the first tables
+            int seats = share(configuration.seats(), count, t);
+            Table table = new Table(t, firstSeat, seats, configuration.chopsticks());
+            Waiter[] section = new Waiter[share(waiters.length, count, t)];
+            for (int w = 0; w < section.length; w++) {
+                section[w] = new Waiter(Name.waiter(firstWaiter + w), configuration.dispatchMode(), table);
+            }
+            table.staff(section);
+            System.arraycopy(section, 0, waiters, firstWaiter, section.length);
+            tables[t] = table;
+            firstSeat += seats;
+            firstWaiter += section.length;
+        }
+    }
+
+    private static int share(int total, int parts, int part) {
+        return total / parts + (part < total % parts ? 1 : 0);
+    }
+
+    public Table[] tables() {
+        return tables.clone();
+    }
+
+    public Table table(int number) {
+        return tables[number];
+    }
+
+    public Waiter[] waiters() {
+        return waiters;
+    }
+
+    public Seat[] seats() {
+        java.util.List<Seat> seats = new java.util.ArrayList<>();
+        for (Table table : tables) {
+            java.util.Collections.addAll(seats, table.seats());
+        }
+        return seats.toArray(new Seat[0]);
+    }
+
+    public int occupiedCount() {
+        int occupied = 0;
+        for (Table table : tables) {
+            occupied += table.occupiedCount();
+        }
+        return occupied;
+    }
+
+    /**
+     * The table with the smallest share of its seats taken; between equally full tables, the one
+     * whose waiters have the fewest calls each to answer.
+     */
+    public Table leastLoaded() {
+        Table best = tables[0];
+        for (int t = 1; t < tables.length; t++) {
+            Table table = tables[t];
+            double load = table.load();
+            double bestLoad = best.load();
+            if (load < bestLoad || (load == bestLoad && table.backlog() < best.backlog())) {
+                best = table;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Seats the caller at the least loaded table, or at any table with room if that one filled up
+     * in the meantime. Returns null if the restaurant is full.
+     */
+    public Seat claimSeat() {
+        if (tables.length == 1) {
+            return tables[0].claimAvailableSeat();
+        }
+        Table preferred = leastLoaded();
+        Seat seat = preferred.claimAvailableSeat();
+        for (int t = 0; seat == null && t < tables.length; t++) {
+            if (tables[t] != preferred) {
+                seat = tables[t].claimAvailableSeat();
+            }
+        }
+        return seat;
+    }
+
+    public Seat availableSeat() {
+        Seat seat = leastLoaded().availableSeat();
+        for (int t = 0; seat == null && t < tables.length; t++) {
+            seat = tables[t].availableSeat();
+        }
+        return seat;
+    }
+
+    // Chopsticks in use, by restaurant-wide number
+    public java.util.List<Integer> heldChopsticks() {
+        java.util.List<Integer> held = new java.util.ArrayList<>();
+        for (Table table : tables) {
+            for (int chopstick : table.chopsticks().heldChopsticks()) {
+                held.add(table.firstSeat() + chopstick);
+            }
+        }
+        return held;
+    }
+
+    public String chopstickReport() {
+        if (tables.length == 1) {
+            return tables[0].chopsticks().toString();
+        }
+        java.util.StringJoiner report = new java.util.StringJoiner("; ");
+        for (Table table : tables) {
+            report.add(table + " " + table.chopsticks());
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,85 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live head counts of the restaurant, kept up to date by the actors as they change state rather
+ * than recounted by whoever asks. Active philosophers, occupied seats and held chopsticks share
+ * one packed word, so each transition is a single atomic add and a snapshot is a single read
+ * that never mixes counts from different moments.
+ */
+public final class RestaurantStatus {
+
+    // Field widths in the packed word: chopsticks in the low bits, then seats, then philosophers.
+    // Held chopsticks never outnumber seats, so the two share a width; a million active
+    // philosophers is already more threads than a JVM runs comfortably.
+    static final int CHOPSTICK_BITS = 22;
+    static final int SEAT_BITS = 22;
+    static final int PHILOSOPHER_BITS = 64 - CHOPSTICK_BITS - SEAT_BITS;
+    static final int MAX_SEATS = (1 << SEAT_BITS) - 1;
+    static final int MAX_PHILOSOPHERS = (1 << PHILOSOPHER_BITS) - 1;
+
+    private static final int SEAT_SHIFT = CHOPSTICK_BITS;
+    private static final int PHILOSOPHER_SHIFT = CHOPSTICK_BITS + SEAT_BITS;
+
+    private static final AtomicLong STATE = new AtomicLong();
+
+    public static final class Snapshot {
+        private final long state;
+
+        private Snapshot(long state) {
+            this.state = state;
+        }
+
+        // Philosophers who have come in and not yet left for good
+        public int activePhilosophers() {
+            return (int) (state >>> PHILOSOPHER_SHIFT);
+        }
+
+        public int occupiedSeats() {
+            return (int) ((state >>> SEAT_SHIFT) & MAX_SEATS);
+        }
+
+        public int heldChopsticks() {
+            return (int) (state & ((1 << CHOPSTICK_BITS) - 1));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d active philosophers, %d seats taken, %d chopsticks taken",
+                    activePhilosophers(), occupiedSeats(), heldChopsticks());
+        }
+    }
+
+    private RestaurantStatus() {
+        // Prevent instantiation
+    }
+
+    public static Snapshot snapshot() {
+        return new Snapshot(STATE.get());
+    }
+
+    static void philosopherArrived() {
+        STATE.getAndAdd(1L << PHILOSOPHER_SHIFT);
+    }
+
+    static void philosopherLeft() {
+        STATE.getAndAdd(-(1L << PHILOSOPHER_SHIFT));
+    }
+
+    static void seatTaken() {
+        STATE.getAndAdd(1L << SEAT_SHIFT);
+    }
+
+    static void seatVacated() {
+        STATE.getAndAdd(-(1L << SEAT_SHIFT));
+    }
+
+    static void chopsticksTaken(int chopsticks) {
+        STATE.getAndAdd(chopsticks);
+    }
+
+    static void chopsticksPutDown(int chopsticks) {
+        STATE.getAndAdd(-chopsticks);
+    }
+}
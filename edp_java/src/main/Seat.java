@@ -1,52 +1,87 @@
 package main;
 
+/**
+ * A seat at one of the restaurant's tables. Occupancy lives in the table's bitset, so claiming
+ * and leaving a seat only ever touches that table.
+ */
 public class Seat {
-    private static final Seat[] SEATS = new Seat[Philosopher.list().length];
-    static {
-        for (int i = 0; i < SEATS.length; i++)
-            SEATS[i] = new Seat();
-    }
 
     public static Seat[] seats() {
-        return SEATS.clone();
+        return Restaurant.current().seats();
     }
 
-    public static synchronized Seat availableSeat() {
-        for (Seat seat : SEATS)
-            if (!seat.occupied)
-                return seat;
-        return null;
+    public static int occupiedCount() {
+        return Restaurant.current().occupiedCount();
     }
 
-    private static int nextNumber = 0;
-    private final int number;
-    private boolean occupied = false;
+    /**
+     * Returns a seat that was free when looked at, without claiming it. Callers still have to
+     * win {@link #attemptToOccupy()}; prefer {@link #claimAvailableSeat()}.
+     */
+    public static Seat availableSeat() {
+        return Restaurant.current().availableSeat();
+    }
 
-    public Seat() {
-        this.number = nextNumber++;
+    /**
+     * Finds and occupies a free seat at the least loaded table, or returns null if every table
+     * is full.
+     */
+    public static Seat claimAvailableSeat() {
+        return Restaurant.current().claimSeat();
     }
 
+    private final Table table;
+    // Position at the table, which is also the seat's number for the table's chopsticks
+    private final int index;
+    private final int word;
+    private final long mask;
+
+    public Seat(Table table, int index) {
+        this.table = table;
+        this.index = index;
+        this.word = index >>> 6;
+        this.mask = 1L << (index & 63);
+    }
+
+    // Restaurant-wide seat number
     public int number() {
-        return number;
+        return table.firstSeat() + index;
+    }
+
+    public int index() {
+        return index;
     }
 
-    public synchronized boolean isOccupied() {
-        return occupied;
+    public Table table() {
+        return table;
     }
 
-    public synchronized boolean attemptToOccupy() {
-        if (!occupied) {
-            occupy();
-            return true;
-        }
-        return false;
+    public boolean isOccupied() {
+        return (table.occupancy.get(word) & mask) != 0;
     }
 
-    private synchronized void occupy() {
-        occupied = true;
+    public boolean attemptToOccupy() {
+        long bits;
+        do {
+            bits = table.occupancy.get(word);
+            if ((bits & mask) != 0) {
+                return false;
+            }
+        } while (!table.occupancy.compareAndSet(word, bits, bits | mask));
+        table.occupied.incrementAndGet();
+        RestaurantStatus.seatTaken();
+        return true;
     }
 
-    public synchronized void vacate() {
-        occupied = false;
+    public void vacate() {
+        long bits;
+        do {
+            bits = table.occupancy.get(word);
+            if ((bits & mask) == 0) {
+                return;
+            }
+        } while (!table.occupancy.compareAndSet(word, bits, bits & ~mask));
+        table.occupied.decrementAndGet();
+        RestaurantStatus.seatVacated();
     }
 }
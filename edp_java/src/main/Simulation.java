@@ -0,0 +1,512 @@
+package main;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Discrete-event model of the restaurant. Every wait is an event on an {@link EventScheduler}
+ * instead of a sleeping thread, so a whole day runs in milliseconds on a single thread, and a
+ * simulation owns all of its state and can run next to others in one JVM.
+ *
+ * This is a separate model, not a replay of the actor classes: {@code Diner}, {@code SimWaiter}
+ * and {@code SimCook} re-implement the philosopher, waiter and cook lifecycles in simplified form
+ * (one table, plain chopstick flags instead of the arbiter strategies, no ledger or journal, a
+ * single generic kitchen). Only the menu, the arrival processes, admission control, kitchen
+ * scheduling and the coffee-break policy are shared classes. A change to an actor's lifecycle has
+ * to be mirrored here by hand, and the timings only the simulation reads (patience, cooking time,
+ * polling interval) tune this model, not the threaded restaurant.
+ */
+public class Simulation {
+
+    /**
+     * The settings this model reads. The rest (tables, stations, chopstick strategy, execution
+     * mode, logging, journal and stall detection) only shape the threaded restaurant.
+     */
+    public static final Set<String> SETTINGS = Set.of(Configuration.PHILOSOPHERS, Configuration.SEATS,
+            Configuration.WAITERS, Configuration.COOKS, Configuration.BATCH, Configuration.ORDER_QUEUE,
+            Configuration.COOK_PERMITS, Configuration.ADMISSION, Configuration.KITCHEN, Configuration.DISPATCH,
+            Configuration.ARRIVALS, Configuration.ARRIVAL_RATE, Configuration.ARRIVAL_TRACE, Configuration.BUDGET,
+            Configuration.THINK_TIME, Configuration.DURATION, Configuration.SEED, Configuration.PATIENCE,
+            Configuration.CHECK_ORDERS_INTERVAL, Configuration.COOKING_TIME);
+
+    public static final class Result {
+        private final Configuration configuration;
+        private final long virtualMillis;
+        private final long wallMillis;
+        private final long events;
+        private final long mealsServed;
+        private final long couponsIssued;
+        private final long walkouts;
+        private final double revenue;
+        private final long deadlineMisses;
+        private final long[] orderToPlate;
+        private final long arrivals;
+        private final double offeredArrivals;
+        private final long arrivalsSeated;
+
+        private Result(Configuration configuration, long virtualMillis, long wallMillis, long events,
+                long mealsServed, long couponsIssued, long walkouts, double revenue, long deadlineMisses,
+                long[] orderToPlate, long arrivals, double offeredArrivals, long arrivalsSeated) {
+            this.configuration = configuration;
+            this.virtualMillis = virtualMillis;
+            this.wallMillis = wallMillis;
+            this.events = events;
+            this.mealsServed = mealsServed;
+            this.couponsIssued = couponsIssued;
+            this.walkouts = walkouts;
+            this.revenue = revenue;
+            this.deadlineMisses = deadlineMisses;
+            this.orderToPlate = orderToPlate;
+            this.arrivals = arrivals;
+            this.offeredArrivals = offeredArrivals;
+            this.arrivalsSeated = arrivalsSeated;
+        }
+
+        public Configuration configuration() {
+            return configuration;
+        }
+
+        public long virtualMillis() {
+            return virtualMillis;
+        }
+
+        public long wallMillis() {
+            return wallMillis;
+        }
+
+        public long events() {
+            return events;
+        }
+
+        public long mealsServed() {
+            return mealsServed;
+        }
+
+        public long couponsIssued() {
+            return couponsIssued;
+        }
+
+        public long walkouts() {
+            return walkouts;
+        }
+
+        public double revenue() {
+            return revenue;
+        }
+
+        // Orders a cook started after their deadline
+        public long deadlineMisses() {
+            return deadlineMisses;
+        }
+
+        // Philosophers let in by the arrival process; zero for a closed population
+        public long arrivals() {
+            return arrivals;
+        }
+
+        // Arrivals per minute the process was expected to offer
+        public double offeredPerMinute() {
+            return perMinute(offeredArrivals);
+        }
+
+        // Arrivals per minute who got a seat at least once
+        public double achievedPerMinute() {
+            return perMinute(arrivalsSeated);
+        }
+
+        private double perMinute(double amount) {
+            return virtualMillis == 0 ? 0 : amount * 60_000.0 / virtualMillis;
+        }
+
+        public double mealsPerMinute() {
+            return virtualMillis == 0 ? 0 : mealsServed * 60_000.0 / virtualMillis;
+        }
+
+        // Share of orders that ended in a coupon instead of a meal
+        public double couponRate() {
+            long orders = mealsServed + couponsIssued;
+            return orders == 0 ? 0 : (double) couponsIssued / orders;
+        }
+
+        // Order-to-plate latency in virtual milliseconds, or -1 if nothing was served
+        public long orderToPlatePercentile(double percentile) {
+            if (orderToPlate.length == 0) {
+                return -1;
+            }
+            int index = (int) Math.ceil(percentile * orderToPlate.length) - 1;
+            return orderToPlate[Math.max(0, Math.min(index, orderToPlate.length - 1))];
+        }
+
+        @Override
+        public String toString() {
+            String load = configuration.arrivals() == ArrivalProcess.Kind.CLOSED ? ""
+                    : String.format(", %,d arrivals (%.1f/min offered, %.1f/min seated)", arrivals,
+                            offeredPerMinute(), achievedPerMinute());
+            return String.format(
+                    "Simulated %.1f minutes in %d ms (%,d events): %d meals served (%.1f/min), %d coupons, "
+                            + "%d walkouts, $%.2f revenue, %d late starts, order-to-plate p50 %d ms, p99 %d ms",
+                    virtualMillis / 60_000.0, wallMillis, events, mealsServed, mealsPerMinute(), couponsIssued,
+                    walkouts, revenue, deadlineMisses, orderToPlatePercentile(0.50), orderToPlatePercentile(0.99))
+                    + load;
+        }
+    }
+
+    private static final class Diner {
+        // Cents, like the threaded restaurant's ledger
+        private long money;
+        private final long thinkTime;
+        private boolean seatedBefore = false;
+        private int seat = -1;
+        private boolean hungry = false;
+        private int meal;
+        private long calledAt;
+        private long timeOrdered;
+        private boolean callingWaiter = false;
+        private EventScheduler.Event giveUp;
+
+        private Diner(float budget, long thinkTime) {
+            this.money = Ledger.cents(budget);
+            this.thinkTime = thinkTime;
+        }
+    }
+
+    private static final class SimWaiter {
+        private Diner patron;
+    }
+
+    private static final class SimCook {
+        private int mealsPrepared = 0;
+        // Owed a break that the schedule has put off
+        private boolean breakDue = false;
+        private int batchSize;
+        private long cycleStart;
+    }
+
+    private final Configuration configuration;
+    private final EventScheduler scheduler = new EventScheduler();
+    private final Random random;
+    // Open restaurants draw arrivals from their own generator, so meal choices do not shift them
+    private final ArrivalProcess arrivals;
+    private final Random arrivalRandom;
+    private boolean arrivalsEnded;
+    private long arrivalsSeated = 0;
+
+    private final Diner[] diners;
+    private final Diner[] occupants;
+    private final int[] freeSeats;
+    private int freeSeatCount;
+    private final boolean[] chopsticks;
+
+    private final SimWaiter[] waiters;
+    private final ArrayDeque<SimWaiter> idleWaiters = new ArrayDeque<>();
+    private final ArrayDeque<Diner> waiterCalls = new ArrayDeque<>();
+    private final ArrayDeque<Diner> completedMeals = new ArrayDeque<>();
+
+    private final ArrayDeque<SimCook> idleCooks = new ArrayDeque<>();
+    private final KitchenQueue<Diner> orderQueue;
+    private final AdmissionControl admission;
+    private final BreakSchedule breaks;
+
+    private int diningPhilosophers;
+    private long mealsServed = 0;
+    private long couponsIssued = 0;
+    private long walkouts = 0;
+    private long revenueCents = 0;
+    private long[] orderToPlate = new long[64];
+
+    public Simulation(Configuration configuration) {
+        this.configuration = configuration;
+        this.random = new Random(configuration.seed());
+
+        arrivals = ArrivalProcess.create(configuration);
+        arrivalRandom = new Random(configuration.seed() + 1);
+        arrivalsEnded = arrivals == null;
+        diners = new Diner[arrivals == null ? configuration.philosophers() : 0];
+        Arrays.setAll(diners, i -> new Diner(configuration.budget(), configuration.thinkTime()));
+        diningPhilosophers = diners.length;
+
+        int seats = configuration.seats();
+        occupants = new Diner[seats];
+        chopsticks = new boolean[seats];
+        freeSeats = new int[seats];
+        // Lowest seat numbers are handed out first, like the threaded table
+        for (int i = 0; i < seats; i++) {
+            freeSeats[i] = seats - 1 - i;
+        }
+        freeSeatCount = seats;
+
+        waiters = new SimWaiter[configuration.waiters()];
+        Arrays.setAll(waiters, i -> new SimWaiter());
+        for (int i = 0; i < configuration.cooks(); i++) {
+            idleCooks.add(new SimCook());
+        }
+        admission = new AdmissionControl(configuration.admission(), configuration.cookPermits(),
+                configuration.cooks() * configuration.batch() + configuration.orderQueue(), configuration.patience(),
+                configuration.cooks(), 1.0 / configuration.cookingTime());
+        breaks = new BreakSchedule(configuration.cooks(), Cook.MEALS_BETWEEN_BREAKS, configuration.cookingTime(),
+                Cook.COFFEE_BREAK_TIME);
+        orderQueue = new KitchenQueue<>(configuration.kitchen(), this::deadline,
+                diner -> cookingTime(Order.cookingTimeOf(diner.meal)), configuration.patience() / 2, scheduler::now);
+    }
+
+    public Result run() {
+        long start = System.nanoTime();
+        for (Diner diner : diners) {
+            scheduler.schedule(0, () -> attemptToDine(diner));
+        }
+        if (arrivals != null) {
+            scheduleNextArrival();
+        }
+        for (SimWaiter waiter : waiters) {
+            if (configuration.dispatchMode() == Waiter.DispatchMode.POLLING) {
+                scheduler.schedule(0, () -> pollingPass(waiter));
+            } else {
+                idleWaiters.add(waiter);
+            }
+        }
+        scheduler.runUntil(configuration.duration());
+
+        long[] latencies = Arrays.copyOf(orderToPlate, (int) mealsServed);
+        Arrays.sort(latencies);
+        return new Result(configuration, scheduler.now(), (System.nanoTime() - start) / 1_000_000,
+                scheduler.processed(), mealsServed, couponsIssued, walkouts, revenueCents / 100.0, admission.deadlineMisses(),
+                latencies, arrivals == null ? 0 : arrivals.arrivals() - (arrivalsEnded ? 0 : 1),
+                arrivals == null ? 0 : arrivals.offered(scheduler.now()), arrivalsSeated);
+    }
+
+    // Arrivals
+
+    // Only the next arrival is ever scheduled, so millions of them cost one event at a time
+    private void scheduleNextArrival() {
+        long time = arrivals.next(arrivalRandom);
+        if (time < 0 || time > configuration.duration()) {
+            arrivalsEnded = time < 0;
+            return;
+        }
+        Diner diner = new Diner(arrivals.budget(), arrivals.thinkTime());
+        scheduler.schedule(Math.max(0, time - scheduler.now()), () -> arrive(diner));
+    }
+
+    private void arrive(Diner diner) {
+        diningPhilosophers++;
+        scheduleNextArrival();
+        attemptToDine(diner);
+    }
+
+    // Philosopher
+
+    private void attemptToDine(Diner diner) {
+        if (freeSeatCount == 0) {
+            think(diner);
+            return;
+        }
+        if (!diner.seatedBefore) {
+            diner.seatedBefore = true;
+            arrivalsSeated++;
+        }
+        diner.seat = freeSeats[--freeSeatCount];
+        occupants[diner.seat] = diner;
+        scheduler.schedule(diner.thinkTime, () -> callWaiter(diner));
+    }
+
+    private void callWaiter(Diner diner) {
+        diner.calledAt = scheduler.now();
+        waiterCalls.add(diner);
+        diner.callingWaiter = true;
+        diner.giveUp = scheduler.schedule(configuration.patience(), () -> giveUpOnWaiter(diner));
+        dispatchWaiters();
+    }
+
+    private void giveUpOnWaiter(Diner diner) {
+        // Left in waiterCalls and skipped when a waiter reaches it, to avoid a linear removal
+        diner.callingWaiter = false;
+        walkouts++;
+        vacate(diner);
+        think(diner);
+    }
+
+    private void serve(Diner diner) {
+        diner.hungry = true;
+        tryToEat(diner);
+    }
+
+    private void tryToEat(Diner diner) {
+        int left = diner.seat;
+        int right = (diner.seat + 1) % chopsticks.length;
+        if (chopsticks[left] || chopsticks[right]) {
+            // Stays hungry until a neighbour puts a chopstick down
+            return;
+        }
+        diner.hungry = false;
+        chopsticks[left] = true;
+        chopsticks[right] = true;
+        scheduler.schedule(Philosopher.EATING_TIME, () -> finishEating(diner));
+    }
+
+    private void finishEating(Diner diner) {
+        int seats = chopsticks.length;
+        int seat = diner.seat;
+        chopsticks[seat] = false;
+        chopsticks[(seat + 1) % seats] = false;
+
+        long cost = Order.centsOf(diner.meal);
+        revenueCents += Math.min(cost, diner.money);
+        diner.money = Math.max(0, diner.money - cost);
+        vacate(diner);
+        think(diner);
+
+        wakeIfHungry(occupants[(seat + seats - 1) % seats]);
+        wakeIfHungry(occupants[(seat + 1) % seats]);
+    }
+
+    private void wakeIfHungry(Diner neighbour) {
+        if (neighbour != null && neighbour.hungry) {
+            tryToEat(neighbour);
+        }
+    }
+
+    private void think(Diner diner) {
+        if (diner.money <= 0) {
+            diningPhilosophers--;
+            return;
+        }
+        scheduler.schedule(diner.thinkTime, () -> attemptToDine(diner));
+    }
+
+    private void vacate(Diner diner) {
+        occupants[diner.seat] = null;
+        freeSeats[freeSeatCount++] = diner.seat;
+        diner.seat = -1;
+    }
+
+    // Waiter
+
+    private void dispatchWaiters() {
+        while (!idleWaiters.isEmpty() && (!completedMeals.isEmpty() || nextCaller() != null)) {
+            SimWaiter waiter = idleWaiters.poll();
+            serveNextTask(waiter);
+            if (waiter.patron != null) {
+                processOrder(waiter);
+            }
+            idleWaiters.add(waiter);
+        }
+    }
+
+    private void pollingPass(SimWaiter waiter) {
+        if (diningPhilosophers == 0 && arrivalsEnded) {
+            return;
+        }
+        serveNextTask(waiter);
+        scheduler.schedule(configuration.checkOrdersInterval(), () -> pollingPass(waiter));
+    }
+
+    private void serveNextTask(SimWaiter waiter) {
+        if (waiter.patron != null) {
+            processOrder(waiter);
+        } else if (!completedMeals.isEmpty()) {
+            Diner diner = completedMeals.poll();
+            recordOrderToPlate(scheduler.now() - diner.timeOrdered);
+            serve(diner);
+        } else if (nextCaller() != null) {
+            Diner diner = waiterCalls.poll();
+            diner.callingWaiter = false;
+            diner.giveUp.cancel();
+            diner.meal = Order.Food.randomMealId(random);
+            diner.timeOrdered = scheduler.now();
+            waiter.patron = diner;
+        }
+    }
+
+    // Drops callers who already gave up from the head of the queue
+    private Diner nextCaller() {
+        while (!waiterCalls.isEmpty() && !waiterCalls.peek().callingWaiter) {
+            waiterCalls.poll();
+        }
+        return waiterCalls.peek();
+    }
+
+    private void processOrder(SimWaiter waiter) {
+        Diner diner = waiter.patron;
+        waiter.patron = null;
+        if (admission.tryAdmit()) {
+            orderQueue.put(diner);
+            dispatchCooks();
+        } else {
+            couponsIssued++;
+            diner.money += Philosopher.COUPON_CENTS;
+            vacate(diner);
+            think(diner);
+        }
+    }
+
+    // Cook
+
+    private void dispatchCooks() {
+        while (!idleCooks.isEmpty() && orderQueue.size() > 0) {
+            SimCook cook = idleCooks.poll();
+            int size = Math.min(configuration.batch(), orderQueue.size());
+            Diner[] batch = new Diner[size];
+            for (int i = 0; i < size; i++) {
+                batch[i] = orderQueue.poll();
+                admission.started(deadline(batch[i]), scheduler.now());
+            }
+            cook.batchSize = size;
+            cook.cycleStart = scheduler.now();
+            long cookingTime = cookingTime(size == 1 ? Order.cookingTimeOf(batch[0].meal)
+                    : Cook.batchCookingTime(size, entrees(batch)));
+            scheduler.schedule(cookingTime, () -> finishCooking(cook, batch));
+        }
+    }
+
+    private static int entrees(Diner[] batch) {
+        return (int) Arrays.stream(batch).mapToInt(d -> Order.entreeOf(d.meal)).distinct().count();
+    }
+
+    // Same deadline as a threaded order: patience for a waiter, then again for a cook to start
+    private long deadline(Diner diner) {
+        return diner.calledAt + 2L * configuration.patience();
+    }
+
+    // Scales a time from the menu's estimates to the configured average meal
+    private long cookingTime(long menuTime) {
+        return menuTime * configuration.cookingTime() / Cook.COOKING_TIME;
+    }
+
+    private void finishCooking(SimCook cook, Diner[] batch) {
+        int mealsBefore = cook.mealsPrepared;
+        for (Diner diner : batch) {
+            completedMeals.add(diner);
+        }
+        admission.completed(batch.length);
+        admission.recordCycle(cook.batchSize, scheduler.now() - cook.cycleStart);
+        cook.mealsPrepared += batch.length;
+        cook.breakDue |= cook.mealsPrepared / Cook.MEALS_BETWEEN_BREAKS > mealsBefore / Cook.MEALS_BETWEEN_BREAKS;
+        // Same staggering as the threaded kitchen: a refused break waits for the next meal
+        if (cook.breakDue && breaks.tryStart(scheduler.now())) {
+            cook.breakDue = false;
+            admission.cookLeft();
+            scheduler.schedule(Cook.COFFEE_BREAK_TIME, () -> {
+                breaks.end();
+                admission.cookReturned();
+                returnToKitchen(cook);
+            });
+        } else {
+            returnToKitchen(cook);
+        }
+        dispatchWaiters();
+    }
+
+    private void returnToKitchen(SimCook cook) {
+        idleCooks.add(cook);
+        dispatchCooks();
+    }
+
+    private void recordOrderToPlate(long latency) {
+        if (mealsServed == orderToPlate.length) {
+            orderToPlate = Arrays.copyOf(orderToPlate, orderToPlate.length * 2);
+        }
+        orderToPlate[(int) mealsServed++] = latency;
+    }
+}
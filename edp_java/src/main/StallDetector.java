@@ -0,0 +1,408 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Notices deadlocks at the table and philosophers who have gone too long without a meal, while
+ * the restaurant keeps running. Chopstick arbiters publish which seat holds each chopstick with a
+ * lazy store, and a seat that has to block for one posts the wait into a pre-allocated ring, the
+ * same way actors log; philosophers post arrivals, seatings, meals and departures. One detector
+ * thread replays those events into a wait-for graph that only it touches, so no actor is ever
+ * stopped to inspect it, and an uncontended pick-up costs nothing beyond the holder stores.
+ *
+ * A seat waits for at most one chopstick at a time, so every seat has at most one outgoing edge
+ * and a new cycle must run through the edge just added. The detector walks the chain from a seat
+ * when its wait arrives; an edge that changes because a waited-for chopstick changed hands is
+ * caught by walking from waits that have lasted a whole CHECK_INTERVAL. Holders are read while
+ * they change, so a cycle is reported only once it is still there, with every seat in it on the
+ * same wait, a check later.
+ *
+ * Seats are exclusive but never waited on, so they appear in reports as held rather than as
+ * edges; waiting for a waiter or a meal is a wait on whoever frees up first, which cannot form a
+ * single-owner cycle, and shows up as starvation instead.
+ *
+ * Settings: --stall-detector=on|off (on by default) and --starvation-threshold=ms.
+ */
+public final class StallDetector {
+
+    private enum Kind {
+        ARRIVED, SEATED, VACATED, ATE, LEFT, WAITING, WAITED
+    }
+
+    // How often starvation is checked, long waits walked and suspected cycles confirmed
+    static final long CHECK_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    static final long IDLE_PARK = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // One reusable event per ring slot; chopstick events are numbered within their arbiter's table
+    private static final class Slot {
+        private volatile long published = -1;
+        private Kind kind;
+        private long time;
+        private Philosopher philosopher;
+        private ChopstickArbiter arbiter;
+        private int seat;
+        private int chopstick;
+    }
+
+    private static final int CAPACITY = 1 << 14;
+    private static final int MASK = CAPACITY - 1;
+
+    private static final boolean ENABLED;
+    private static final long THRESHOLD;
+    private static final Slot[] RING;
+    private static final AtomicLong CLAIMED = new AtomicLong();
+    private static volatile long processed = 0;
+
+    // Written by the detector thread only
+    private static volatile long deadlocks = 0;
+    private static volatile long starvations = 0;
+    private static volatile long longestHunger = 0;
+
+    static {
+        Configuration configuration = Configuration.current();
+        ENABLED = configuration.stallDetector();
+        THRESHOLD = TimeUnit.MILLISECONDS.toNanos(configuration.starvationThreshold());
+        if (!ENABLED) {
+            RING = null;
+        } else {
+            RING = new Slot[CAPACITY];
+            java.util.Arrays.setAll(RING, i -> new Slot());
+            Thread detector = new Thread(new Graph()::run, "Stall detector");
+            detector.setDaemon(true);
+            detector.start();
+        }
+    }
+
+    private StallDetector() {
+        // Prevent instantiation
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    static void arrived(Philosopher philosopher) {
+        post(Kind.ARRIVED, philosopher, null, -1, -1);
+    }
+
+    // Seats from here on are numbered across the restaurant
+    static void seated(Philosopher philosopher, int seat) {
+        post(Kind.SEATED, philosopher, null, seat, -1);
+    }
+
+    static void vacated(Philosopher philosopher, int seat) {
+        post(Kind.VACATED, philosopher, null, seat, -1);
+    }
+
+    static void ate(Philosopher philosopher) {
+        post(Kind.ATE, philosopher, null, -1, -1);
+    }
+
+    static void left(Philosopher philosopher) {
+        post(Kind.LEFT, philosopher, null, -1, -1);
+    }
+
+    // Posted by a seat about to block for a chopstick
+    static void waiting(ChopstickArbiter arbiter, int seat, int chopstick) {
+        post(Kind.WAITING, null, arbiter, seat, chopstick);
+    }
+
+    // Posted once the blocked seat has the chopstick, or stops waiting for it
+    static void waited(ChopstickArbiter arbiter, int seat) {
+        post(Kind.WAITED, null, arbiter, seat, -1);
+    }
+
+    private static void post(Kind kind, Philosopher philosopher, ChopstickArbiter arbiter, int seat, int chopstick) {
+        if (!ENABLED) {
+            return;
+        }
+        long sequence = CLAIMED.getAndIncrement();
+        // Only waits if the detector has fallen a whole ring behind
+        while (sequence - processed >= CAPACITY) {
+            Thread.yield();
+        }
+        Slot slot = RING[(int) (sequence & MASK)];
+        slot.kind = kind;
+        slot.time = System.nanoTime();
+        slot.philosopher = philosopher;
+        slot.arbiter = arbiter;
+        slot.seat = seat;
+        slot.chopstick = chopstick;
+        slot.published = sequence;
+    }
+
+    /**
+     * Deadlocks and starvation seen so far, and the longest any philosopher went without a meal.
+     */
+    public static String report() {
+        if (!ENABLED) {
+            return "detector off";
+        }
+        return String.format("%d deadlocks, %d philosophers went over %.1f s without a meal, longest %.1f s",
+                deadlocks, starvations, seconds(THRESHOLD), seconds(longestHunger));
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * The detector thread's view of the table, rebuilt from events.
+     */
+    private static final class Graph {
+
+        private static final class Diner {
+            private final Philosopher philosopher;
+            private long lastMeal;
+            private int seat = -1;
+            private boolean starving = false;
+
+            Diner(Philosopher philosopher, long arrived) {
+                this.philosopher = philosopher;
+                this.lastMeal = arrived;
+            }
+        }
+
+        // A seat's one outgoing edge: the chopstick it is blocked on
+        private static final class Wait {
+            private final ChopstickArbiter arbiter;
+            private final int chopstick;
+            private final long since;
+            private final long sequence;
+
+            Wait(ChopstickArbiter arbiter, int chopstick, long since, long sequence) {
+                this.arbiter = arbiter;
+                this.chopstick = chopstick;
+                this.since = since;
+                this.sequence = sequence;
+            }
+
+            // Restaurant-wide seat holding the chopstick, or -1
+            int holder() {
+                int holder = arbiter.holder(chopstick);
+                return holder < 0 ? -1 : arbiter.firstSeat() + holder;
+            }
+        }
+
+        // A cycle, as the wait sequences of its seats, reported if it is still there a check later
+        private static final class Suspect {
+            private final List<Integer> seats;
+            private final Set<Long> waits;
+            private final long found;
+
+            Suspect(List<Integer> seats, Set<Long> waits, long found) {
+                this.seats = seats;
+                this.waits = waits;
+                this.found = found;
+            }
+        }
+
+        private final Map<Philosopher, Diner> diners = new HashMap<>();
+        private final Map<Integer, Philosopher> occupants = new HashMap<>();
+        // Restaurant-wide seat to the wait it is blocked in
+        private final Map<Integer, Wait> waits = new HashMap<>();
+        private final List<Suspect> suspects = new ArrayList<>();
+        // Waits already suspected or reported, so a lasting deadlock is reported once
+        private final Set<Long> seen = new HashSet<>();
+
+        void run() {
+            long next = 0;
+            long lastCheck = System.nanoTime();
+            while (true) {
+                Slot slot = RING[(int) (next & MASK)];
+                if (slot.published == next) {
+                    apply(slot, next);
+                    // Let go of the philosopher so the ring does not keep departed ones alive
+                    slot.philosopher = null;
+                    processed = ++next;
+                } else {
+                    LockSupport.parkNanos(IDLE_PARK);
+                }
+                long now = System.nanoTime();
+                if (now - lastCheck >= CHECK_INTERVAL) {
+                    confirmSuspects(now);
+                    walkLongWaits(now);
+                    checkStarvation(now);
+                    lastCheck = now;
+                }
+            }
+        }
+
+        private void apply(Slot slot, long sequence) {
+            switch (slot.kind) {
+                case ARRIVED:
+                    diners.put(slot.philosopher, new Diner(slot.philosopher, slot.time));
+                    break;
+                case SEATED: {
+                    occupants.put(slot.seat, slot.philosopher);
+                    Diner diner = diners.get(slot.philosopher);
+                    if (diner != null) {
+                        diner.seat = slot.seat;
+                    }
+                    break;
+                }
+                case VACATED: {
+                    occupants.remove(slot.seat, slot.philosopher);
+                    Diner diner = diners.get(slot.philosopher);
+                    if (diner != null) {
+                        diner.seat = -1;
+                    }
+                    break;
+                }
+                case ATE: {
+                    Diner diner = diners.get(slot.philosopher);
+                    if (diner != null) {
+                        diner.lastMeal = slot.time;
+                        diner.starving = false;
+                    }
+                    break;
+                }
+                case LEFT:
+                    diners.remove(slot.philosopher);
+                    break;
+                case WAITING: {
+                    int seat = slot.arbiter.firstSeat() + slot.seat;
+                    waits.put(seat, new Wait(slot.arbiter, slot.chopstick, slot.time, sequence));
+                    suspect(seat, slot.time);
+                    break;
+                }
+                case WAITED:
+                    waits.remove(slot.arbiter.firstSeat() + slot.seat);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // Follows the single outgoing edge from each seat; a cycle exists if it leads back to the start
+        private List<Integer> cycleFrom(int start) {
+            List<Integer> cycle = new ArrayList<>();
+            int seat = start;
+            for (int steps = 0; steps <= waits.size(); steps++) {
+                cycle.add(seat);
+                Wait wait = waits.get(seat);
+                int holder = wait == null ? -1 : wait.holder();
+                if (holder < 0 || holder == seat) {
+                    return null;
+                }
+                if (holder == start) {
+                    return cycle;
+                }
+                seat = holder;
+            }
+            return null;
+        }
+
+        private Set<Long> sequences(List<Integer> cycle) {
+            Set<Long> sequences = new HashSet<>();
+            for (int seat : cycle) {
+                sequences.add(waits.get(seat).sequence);
+            }
+            return sequences;
+        }
+
+        private void suspect(int seat, long now) {
+            List<Integer> cycle = cycleFrom(seat);
+            if (cycle != null) {
+                Set<Long> sequences = sequences(cycle);
+                if (java.util.Collections.disjoint(seen, sequences)) {
+                    seen.addAll(sequences);
+                    suspects.add(new Suspect(cycle, sequences, now));
+                }
+            }
+        }
+
+        // A waited-for chopstick that changed hands adds an edge no event announced
+        private void walkLongWaits(long now) {
+            for (Map.Entry<Integer, Wait> entry : new ArrayList<>(waits.entrySet())) {
+                Wait wait = entry.getValue();
+                if (now - wait.since >= CHECK_INTERVAL && !seen.contains(wait.sequence)) {
+                    suspect(entry.getKey(), now);
+                }
+            }
+        }
+
+        private void confirmSuspects(long now) {
+            java.util.Iterator<Suspect> pending = suspects.iterator();
+            while (pending.hasNext()) {
+                Suspect suspect = pending.next();
+                if (now - suspect.found < CHECK_INTERVAL) {
+                    continue;
+                }
+                pending.remove();
+                List<Integer> cycle = cycleFrom(suspect.seats.get(0));
+                if (cycle != null && sequences(cycle).equals(suspect.waits)) {
+                    deadlocks++;
+                    Metrics.increment(Metrics.Count.DEADLOCKS);
+                    EventLog.log(EventLog.Type.DEADLOCK_DETECTED, null, describeCycle(cycle, now), null, 0, 0, 0, 0);
+                } else {
+                    // Not a deadlock after all; its waits may still end up in a real one
+                    seen.removeAll(suspect.waits);
+                }
+            }
+        }
+
+        private void checkStarvation(long now) {
+            long longest = longestHunger;
+            for (Diner diner : diners.values()) {
+                long hunger = now - diner.lastMeal;
+                longest = Math.max(longest, hunger);
+                if (hunger > THRESHOLD && !diner.starving) {
+                    diner.starving = true;
+                    starvations++;
+                    Metrics.increment(Metrics.Count.STARVATIONS);
+                    EventLog.log(EventLog.Type.PHILOSOPHER_STARVING, diner.philosopher.name(),
+                            describeHunger(diner, hunger, now), null, 0, 0, 0, 0);
+                }
+            }
+            longestHunger = longest;
+        }
+
+        private String describeCycle(List<Integer> cycle, long now) {
+            StringBuilder report = new StringBuilder();
+            report.append(cycle.size()).append(" seats in a cycle");
+            for (int seat : cycle) {
+                report.append(String.format("%n  %s", describeSeat(seat)));
+                describeWait(report, seat, now);
+            }
+            return report.toString();
+        }
+
+        private String describeHunger(Diner diner, long hunger, long now) {
+            StringBuilder report = new StringBuilder(String.format("has not eaten for %.1f s", seconds(hunger)));
+            if (diner.seat < 0) {
+                report.append(" and has no seat");
+            } else if (waits.containsKey(diner.seat)) {
+                report.append(" and at seat ").append(diner.seat);
+                describeWait(report, diner.seat, now);
+            } else {
+                report.append(String.format(" and is at seat %d, not waiting for chopsticks", diner.seat));
+            }
+            return report.toString();
+        }
+
+        // " has waited N s for chopstick C held by seat S (Name)"
+        private void describeWait(StringBuilder report, int seat, long now) {
+            Wait wait = waits.get(seat);
+            report.append(String.format(" has waited %.1f s for chopstick %d", seconds(now - wait.since),
+                    wait.arbiter.firstSeat() + wait.chopstick));
+            int holder = wait.holder();
+            if (holder >= 0) {
+                report.append(" held by ").append(describeSeat(holder));
+            }
+        }
+
+        private String describeSeat(int seat) {
+            Philosopher occupant = occupants.get(seat);
+            return occupant == null ? "seat " + seat : String.format("seat %d (%s)", seat, occupant.name());
+        }
+    }
+}
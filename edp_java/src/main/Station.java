@@ -0,0 +1,126 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One course's corner of a kitchen split into entree, soup and dessert stations, each with its
+ * own queue and cooks. A placed order is forked to every station with a dish to cook for it; the
+ * stations cook their dishes at the same time, and whichever cook finishes the last dish puts the
+ * meal on the counter, so an order takes as long as its slowest dish rather than the sum of them.
+ *
+ * The station queues hold the orders themselves, and the join is a countdown on the order, so
+ * splitting an order allocates nothing.
+ *
+ * Settings: --stations=entree,soup,dessert cooks (off by default, when every cook makes whole meals).
+ */
+public final class Station {
+
+    private static final Station[] STATIONS;
+    static {
+        Configuration configuration = Configuration.current();
+        int[] cooks = configuration.stations();
+        Order.Food.Type[] types = Order.Food.Type.values();
+        STATIONS = new Station[cooks == null ? 0 : types.length];
+        for (int i = 0; i < STATIONS.length; i++) {
+            STATIONS[i] = new Station(types[i], cooks[i], configuration.kitchen());
+        }
+    }
+
+    // Empty unless the kitchen is split into stations
+    public static Station[] list() {
+        return STATIONS;
+    }
+
+    public static boolean isEnabled() {
+        return STATIONS.length > 0;
+    }
+
+    public static Station of(Order.Food.Type type) {
+        return STATIONS[type.ordinal()];
+    }
+
+    /**
+     * Sends each dish of the order that needs cooking to its station.
+     */
+    static void fork(Order order) {
+        int dishes = 0;
+        for (Station station : STATIONS) {
+            if (order.prepTime(station.type) > 0) {
+                dishes++;
+            }
+        }
+        // Set before any station can finish a dish and count it down
+        order.fork(dishes);
+        for (Station station : STATIONS) {
+            if (order.prepTime(station.type) > 0) {
+                station.queue.put(order);
+            }
+        }
+    }
+
+    private final Order.Food.Type type;
+    private final int cooks;
+    private final KitchenQueue<Order> queue;
+    private final BreakSchedule breaks;
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder dishes = new LongAdder();
+    private final long opened = System.nanoTime();
+
+    private Station(Order.Food.Type type, int cooks, KitchenQueue.Scheduling scheduling) {
+        this.type = type;
+        this.cooks = cooks;
+        this.queue = new KitchenQueue<>(scheduling, Order::deadline, order -> order.prepTime(type),
+                TimeUnit.MILLISECONDS.toNanos(Cook.STARVATION_SLACK), System::nanoTime);
+        this.breaks = new BreakSchedule(cooks, Cook.MEALS_BETWEEN_BREAKS, Cook.COOKING_TIME, Cook.COFFEE_BREAK_TIME);
+    }
+
+    public Order.Food.Type type() {
+        return type;
+    }
+
+    public int cooks() {
+        return cooks;
+    }
+
+    KitchenQueue<Order> queue() {
+        return queue;
+    }
+
+    BreakSchedule breaks() {
+        return breaks;
+    }
+
+    // Called by a station cook after each dish
+    void recordDish(long nanos) {
+        busyNanos.add(nanos);
+        dishes.increment();
+    }
+
+    public long dishes() {
+        return dishes.sum();
+    }
+
+    // Share of the station's cook time since opening spent at the stove
+    public double utilization() {
+        long elapsed = System.nanoTime() - opened;
+        return elapsed <= 0 ? 0 : busyNanos.sum() / ((double) elapsed * cooks);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d %s %.0f%% busy, %,d dishes, %d waiting", type.name().toLowerCase(), cooks,
+                cooks == 1 ? "cook" : "cooks", 100 * utilization(), dishes(), queue.size());
+    }
+
+    /**
+     * One line per station, for the closing report.
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        for (Station station : STATIONS) {
+            report.append(String.format("%n  %s", station));
+        }
+        return report.toString();
+    }
+}
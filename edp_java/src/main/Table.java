@@ -0,0 +1,193 @@
+package main;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * One shard of the dining room: its own seats, the chopsticks between them, and the section of
+ * waiters who answer calls from those seats. Philosophers at different tables never touch the
+ * same seat word, chopstick or call queue; only the kitchen is shared.
+ */
+public class Table {
+
+    private final int number;
+    // Restaurant-wide number of this table's first seat
+    private final int firstSeat;
+    private final Seat[] seats;
+
+    // One bit per seat, set while the seat is occupied. Claims and releases are CAS updates
+    // on a single word, so philosophers never queue on a shared monitor.
+    final AtomicLongArray occupancy;
+    // Lets a full table turn philosophers away without scanning
+    final AtomicInteger occupied = new AtomicInteger();
+
+    private final ChopstickArbiter chopsticks;
+
+    // Philosophers at this table calling for a waiter
+    private final BlockingQueue<Philosopher> callingQueue = new LinkedBlockingQueue<>();
+    // One permit per pending call or completed meal, so idle waiters block instead of polling
+    private final Semaphore workAvailable = new Semaphore(0);
+    private Waiter[] section = new Waiter[0];
+    // Completed meals for this table, one lane per waiter in the section
+    private MpmcRing<Order>[] counterLanes = Counter.newLanes(1);
+
+    public Table(int number, int firstSeat, int seatCount, ChopstickArbiter.Strategy strategy) {
+        if (seatCount < 2) {
+            throw new IllegalArgumentException("A table needs at least two seats.");
+        }
+        this.number = number;
+        this.firstSeat = firstSeat;
+        this.seats = new Seat[seatCount];
+        java.util.Arrays.setAll(seats, i -> new Seat(this, i));
+        this.occupancy = new AtomicLongArray((seatCount + 63) >>> 6);
+        // Bits past the last seat are permanently taken so they are never handed out
+        int spare = occupancy.length() * 64 - seatCount;
+        if (spare > 0) {
+            occupancy.set(occupancy.length() - 1, -1L << (64 - spare));
+        }
+        this.chopsticks = ChopstickArbiter.create(strategy, seatCount, firstSeat);
+    }
+
+    void staff(Waiter[] section) {
+        this.section = section;
+        this.counterLanes = Counter.newLanes(Math.max(1, section.length));
+        for (int w = 0; w < section.length; w++) {
+            section[w].assignLane(w);
+        }
+    }
+
+    public int number() {
+        return number;
+    }
+
+    int firstSeat() {
+        return firstSeat;
+    }
+
+    public Seat[] seats() {
+        return seats.clone();
+    }
+
+    public int seatCount() {
+        return seats.length;
+    }
+
+    public Waiter[] section() {
+        return section.clone();
+    }
+
+    MpmcRing<Order>[] counterLanes() {
+        return counterLanes;
+    }
+
+    public ChopstickArbiter chopsticks() {
+        return chopsticks;
+    }
+
+    public int occupiedCount() {
+        return occupied.get();
+    }
+
+    // Calls waiting for a waiter, including ones whose philosophers have since given up
+    public int pendingCalls() {
+        return callingQueue.size();
+    }
+
+    // Share of seats taken, for the load balancer
+    public double load() {
+        return (double) occupied.get() / seats.length;
+    }
+
+    // Pending calls per waiter in this section, to break ties between equally full tables
+    public double backlog() {
+        return (double) callingQueue.size() / Math.max(1, section.length);
+    }
+
+    /**
+     * Returns a seat that was free when looked at, without claiming it. Callers still have to
+     * win {@link Seat#attemptToOccupy()}; prefer {@link #claimAvailableSeat()}.
+     */
+    public Seat availableSeat() {
+        int word = findFreeWord();
+        if (word < 0) {
+            return null;
+        }
+        long bits = occupancy.get(word);
+        return bits == -1L ? null : seats[(word << 6) + Long.numberOfTrailingZeros(~bits)];
+    }
+
+    /**
+     * Finds and occupies a free seat in one step, or returns null if the table is full.
+     */
+    public Seat claimAvailableSeat() {
+        while (occupied.get() < seats.length) {
+            int word = findFreeWord();
+            if (word < 0) {
+                return null;
+            }
+            long bits = occupancy.get(word);
+            while (bits != -1L) {
+                long free = Long.lowestOneBit(~bits);
+                if (occupancy.compareAndSet(word, bits, bits | free)) {
+                    occupied.incrementAndGet();
+                    RestaurantStatus.seatTaken();
+                    return seats[(word << 6) + Long.numberOfTrailingZeros(free)];
+                }
+                bits = occupancy.get(word);
+            }
+        }
+        return null;
+    }
+
+    // Starts at a random word so concurrent callers spread out instead of racing for seat 0
+    private int findFreeWord() {
+        int words = occupancy.length();
+        int start = words == 1 ? 0 : ThreadLocalRandom.current().nextInt(words);
+        for (int i = 0; i < words; i++) {
+            int word = start + i < words ? start + i : start + i - words;
+            if (occupancy.get(word) != -1L) {
+                return word;
+            }
+        }
+        return -1;
+    }
+
+    public void addPhilosopherToQueue(Philosopher philosopher) {
+        try {
+            callingQueue.put(philosopher);
+            workAvailable.release();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void removePhilosopherFromQueue(Philosopher philosopher) {
+        callingQueue.remove(philosopher);
+    }
+
+    // Check the queue for philosophers calling waiters, skipping any who gave up
+    Philosopher answerNextCall() {
+        Philosopher callingPhilosopher = callingQueue.poll();
+        while (callingPhilosopher != null && !callingPhilosopher.answerCall()) {
+            callingPhilosopher = callingQueue.poll();
+        }
+        return callingPhilosopher;
+    }
+
+    void signalCompletedMeal() {
+        workAvailable.release();
+    }
+
+    void awaitWork() throws InterruptedException {
+        workAvailable.acquire();
+    }
+
+    @Override
+    public String toString() {
+        return "Table " + (number + 1);
+    }
+}
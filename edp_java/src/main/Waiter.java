@@ -1,28 +1,23 @@
 package main;
 
-import java.util.Optional;
-import java.util.concurrent.Semaphore;
-
-public class Waiter extends Thread {
+public class Waiter implements Runnable {
     // Constants (Time in milliseconds)
-    private static final int CHECK_ORDERS_INTERVAL = 500;
-
-    // Static
-    private static final Waiter[] waiters = java.util.Arrays.stream(Name.WAITER_NAMES)
-            .map(n -> new Waiter(n.toString())).toArray(Waiter[]::new);
+    static final int CHECK_ORDERS_INTERVAL = 500;
 
-    private static final int NUM_COOKS = Cook.list().length;
-    public static final Semaphore cookSemaphore = new Semaphore(NUM_COOKS, true);
+    public enum DispatchMode {
+        POLLING, EVENT_DRIVEN
+    }
 
-    // Synchronized queue for philosophers calling waiters
-    private static final java.util.concurrent.BlockingQueue<Philosopher> WAITER_CALLING_QUEUE = new java.util.concurrent.LinkedBlockingQueue<>();
+    // Static
+    // Waiters are numbered as they are hired
+    private static final java.util.concurrent.atomic.AtomicInteger NEXT_NUMBER = new java.util.concurrent.atomic.AtomicInteger();
 
     public static Waiter[] list() {
-        return waiters;
+        return Restaurant.current().waiters();
     }
 
     public static final Waiter availableWaiter() {
-        for (Waiter waiter : waiters) {
+        for (Waiter waiter : list()) {
             if (!waiter.isProcessingOrder()) {
                 return waiter;
             }
@@ -30,63 +25,76 @@ public class Waiter extends Thread {
         return null; // No available waiter found
     }
 
-    public static void addPhilosopherToQueue(Philosopher philosopher) {
-        try {
-            WAITER_CALLING_QUEUE.put(philosopher);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-    }
-
-    public static void removePhilosopherFromQueue(Philosopher philosopher) {
-        WAITER_CALLING_QUEUE.remove(philosopher);
-    }
-
     // Instance
     private Name name;
-    private Optional<Order> order = Optional.empty();
-    private Optional<Philosopher> patron = Optional.empty();
+    private final int number = NEXT_NUMBER.getAndIncrement();
+    // Lane of the table's counter this waiter serves first; set when the table staffs its section
+    private int lane = 0;
+    private final DispatchMode dispatchMode;
+    // The section of the dining room this waiter answers calls from
+    private final Table table;
+    // The order being placed and who it is for, or null between orders
+    private Order order;
+    private Philosopher patron;
     private boolean isProcessingOrder = false;
+    private volatile int mealsServed = 0;
 
     public Waiter(String name) {
+        this(name, DispatchMode.EVENT_DRIVEN);
+    }
+
+    public Waiter(String name, DispatchMode dispatchMode) {
+        this(name, dispatchMode, Restaurant.current().table(0));
+    }
+
+    public Waiter(String name, DispatchMode dispatchMode, Table table) {
         this.name = new Name(name);
+        this.dispatchMode = dispatchMode;
+        this.table = table;
+    }
+
+    void assignLane(int lane) {
+        this.lane = lane;
     }
 
     public String name() {
         return name.toString();
     }
 
+    public Table table() {
+        return table;
+    }
+
+    public int mealsServed() {
+        return mealsServed;
+    }
+
     private boolean isProcessingOrder() {
         return isProcessingOrder;
     }
 
     public void takeOrder(Philosopher philosopher, Order order) {
         this.isProcessingOrder = true;
-        this.order = Optional.of(order);
-        this.patron = Optional.of(philosopher);
+        this.order = order;
+        this.patron = philosopher;
     }
 
     @Override
     public void run() {
-        System.out.println(String.format("Waiter %s is ready to take orders.", name));
+        EventLog.log(EventLog.Type.WAITER_READY, name);
         while (!Thread.currentThread().isInterrupted()) {
             try {
-                if (isProcessingOrder && order.isPresent() && patron.isPresent()) {
-                    processOrder();
-                } else {
-                    // Check for completed meals to deliver
-                    if (Counter.hasCompletedMeals()) {
-                        Order completedOrder = Counter.pollCompletedMeal();
-                        if (completedOrder != null) {
-                            deliverOrder(completedOrder);
-                        }
-                    } else {
-                        // No completed meals available, check for philosophers who need service
-                        checkForPhilosophersNeedingService();
+                if (dispatchMode == DispatchMode.EVENT_DRIVEN) {
+                    table.awaitWork();
+                    serveNextTask();
+                    // Place a freshly taken order right away instead of on the next pass
+                    if (isProcessingOrder) {
+                        processOrder();
                     }
+                } else {
+                    serveNextTask();
+                    Thread.sleep(CHECK_ORDERS_INTERVAL);
                 }
-
-                Thread.sleep(CHECK_ORDERS_INTERVAL);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
@@ -94,49 +102,69 @@ public class Waiter extends Thread {
         }
     }
 
+    private void serveNextTask() {
+        if (isProcessingOrder && order != null && patron != null) {
+            processOrder();
+        } else {
+            // Check for completed meals to deliver
+            Order completedOrder = Counter.pollCompletedMeal(table, lane);
+            if (completedOrder != null) {
+                deliverOrder(completedOrder);
+            } else {
+                // No completed meals available, check for philosophers who need service
+                checkForPhilosophersNeedingService();
+            }
+        }
+    }
+
     private void processOrder() {
-        if (!order.isPresent() || !patron.isPresent()) {
+        if (order == null || patron == null) {
             return;
         }
-        Order currentOrder = order.get();
-        Philosopher currentPatron = patron.get();
-        boolean cookAcquired = cookSemaphore.tryAcquire();
-        if (cookAcquired) {
-            boolean orderPlaced = false;
-            try {
-                Cook.ORDER_QUEUE.put(currentOrder);
-                orderPlaced = true;
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-            if (orderPlaced) {
-                System.out.println(
-                        String.format("Waiter %s placed order for %s.", name, currentPatron.name()));
-            }
+        Order currentOrder = order;
+        Philosopher currentPatron = patron;
+        // Queue the order if a cook should start it before the philosopher runs out of patience
+        if (Cook.ADMISSION.tryAdmit()) {
+            // Admission keeps the kitchen queue bounded, so placing the order never blocks
+            Metrics.increment(Metrics.Count.ORDERS_PLACED);
+            EventLog.log(EventLog.Type.WAITER_PLACED_ORDER, name, currentOrder);
+            Journal.record(Journal.Type.ORDER_PLACED, currentPatron.number(), number, currentOrder.mealId());
+            Cook.placeOrder(currentOrder);
         } else {
-            System.out
-                    .println(String.format("Waiter %s cannot place order for %s - all chefs busy. Giving $5.00 coupon.",
-                            name, currentPatron.name()));
+            EventLog.log(EventLog.Type.WAITER_KITCHEN_FULL, name, null, currentOrder, 0, 0,
+                    Philosopher.COUPON_CENTS / 100.0, 0);
+            Metrics.increment(Metrics.Count.COUPONS_ISSUED);
+            // Journalled before the philosopher is woken, so replay credits it before any later payment
+            Journal.record(Journal.Type.COUPON_ISSUED, currentPatron.number(), number, currentOrder.mealId(),
+                    Philosopher.COUPON_CENTS, 0);
+            Ledger.issueCoupon(currentPatron.wallet(), Philosopher.COUPON_CENTS);
             currentPatron.setShouldReceiveCoupon(true);
-            currentPatron.notifyFoodServed(); // Countdown the latch to wake up the philosopher
+            // Free the seat and the order before waking the philosopher, who may sit down elsewhere at once
             currentPatron.clearOrder();
             currentPatron.vacateSeat();
-            System.out.println(String.format("Philosopher %s has left the restaurant without being served.",
-                    currentPatron.name()));
+            EventLog.log(EventLog.Type.PHILOSOPHER_LEFT_UNSERVED, currentPatron.name());
+            currentOrder.recycle();
+            currentPatron.notifyFoodServed(); // Countdown the latch to wake up the philosopher
         }
-        order = Optional.empty();
-        patron = Optional.empty();
+        order = null;
+        patron = null;
         isProcessingOrder = false;
     }
 
     private void deliverOrder(Order completedOrder) {
         Philosopher targetPhilosopher = completedOrder.philosopher();
+        completedOrder.markServed();
+        Metrics.recordSince(Metrics.Latency.DELIVERY, completedOrder.timeCooked());
+        Metrics.recordSince(Metrics.Latency.ORDER_TO_PLATE, completedOrder.timeOrdered());
+        Metrics.increment(Metrics.Count.MEALS_DELIVERED);
+        mealsServed++;
+        // Log first: once served, the philosopher pays and recycles the order
+        EventLog.log(EventLog.Type.WAITER_SERVING, name, completedOrder);
+        Journal.record(Journal.Type.DELIVERED, targetPhilosopher.number(), number, completedOrder.mealId());
         targetPhilosopher.notifyFoodServed();
-        System.out.println(String.format("Waiter %s is serving philosopher %s %s.", name,
-                targetPhilosopher.name(), completedOrder.mealString()));
         // Make waiter available for new orders
-        order = Optional.empty();
-        patron = Optional.empty();
+        order = null;
+        patron = null;
         isProcessingOrder = false;
     }
 
@@ -145,18 +173,16 @@ public class Waiter extends Thread {
             return; // Already processing an order
         }
 
-        // Check the synchronized queue for philosophers calling waiters
-        Philosopher callingPhilosopher = WAITER_CALLING_QUEUE.poll();
-
+        Philosopher callingPhilosopher = table.answerNextCall();
         if (callingPhilosopher != null) {
             // Philosopher needs service
-            Order newOrder = new Order(callingPhilosopher);
+            Order newOrder = Order.obtain(callingPhilosopher);
+            newOrder.assignLane(lane);
             callingPhilosopher.setOrder(newOrder);
             takeOrder(callingPhilosopher, newOrder);
-
-            String mealDesc = newOrder.mealString();
-            System.out.println(String.format("Waiter %s has taken order for %s from philosopher %s.",
-                    name, mealDesc, callingPhilosopher.name()));
+            Metrics.increment(Metrics.Count.ORDERS_TAKEN);
+            EventLog.log(EventLog.Type.WAITER_TOOK_ORDER, name, newOrder);
+            Journal.record(Journal.Type.ORDER_TAKEN, callingPhilosopher.number(), number, newOrder.mealId());
         }
     }
 }